@@ -0,0 +1,192 @@
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/*
+ *  Aho-Corasick automaton over the keys of a Trie, made by Trie.compileMatcher().  It
+ *  finds every occurrence of every key in a text in a single pass over the text,
+ *  whatever the number of keys.
+ *
+ *  There is one state per prefix of a key (the edges of the radix trie are expanded
+ *  to one state per character), numbered in breadth-first order with the root as state
+ *  0, so the children of a state are consecutive:
+ *
+ *    childStart[s] .. childStart[s+1]-1   the children of state s, sorted by character
+ *    inChar[s], parent[s], depth[s]       the last character of the prefix of s, the
+ *                                         state before it and the length of the prefix
+ *    fail[s]                              the state of the longest proper suffix of the
+ *                                         prefix of s that is also a prefix of some key
+ *    output[s]                            the first key state after s on the fail chain,
+ *                                         or 0 if there is none
+ *
+ *  When the next character of the text has no transition from the current state, the
+ *  scan follows fail links until one has it (or the root is reached), so each character
+ *  costs O(1) amortized.  After every character, the current state (if it is a key) and
+ *  the key states chained by output links are reported.  Nothing is allocated per
+ *  character or per match, and the automaton never changes, so any number of threads
+ *  can scan with it at the same time.
+ */
+
+public final class AhoCorasickMatcher {
+
+    /*
+     *  Receives the matches of a scan: the key with number 'key' (see getKey()) occurs in
+     *  the text at character offset 'offset', and is 'length' characters long.  Matches
+     *  come in the order of their end offsets, longest first for the same end.
+     */
+    public interface MatchHandler {
+        void onMatch(long offset, int length, int key);
+    }
+
+    // transitions from the root, for the characters below ROOT_TABLE_SIZE
+    private static final int ROOT_TABLE_SIZE = 256;
+
+    private final int[] childStart;
+    private final char[] inChar;
+    private final int[] parent;
+    private final int[] depth;
+    private final int[] fail;
+    private final int[] output;
+    private final long[] keyBits;
+    private final int[] rootTable;
+
+    AhoCorasickMatcher(int[] childStart, char[] inChar, int[] parent, long[] keyBits) {
+        this.childStart = childStart;
+        this.inChar = inChar;
+        this.parent = parent;
+        this.keyBits = keyBits;
+        int states = inChar.length;
+        this.depth = new int[states];
+        this.fail = new int[states];
+        this.output = new int[states];
+        this.rootTable = new int[ROOT_TABLE_SIZE];
+        for (int c = 0; c < ROOT_TABLE_SIZE; c++)
+            rootTable[c] = findChild(0, (char) c);
+
+        //breadth-first order means the fail state of s, which is shallower, is done before s
+        for (int s = 1; s < states; s++) {
+            int p = parent[s];
+            depth[s] = depth[p] + 1;
+            //the fail state is found by reading the last character from the parent's fail state
+            int f = p == 0 ? 0 : step(fail[p], inChar[s]);
+            fail[s] = f;
+            output[s] = isKey(f) ? f : output[f];
+        }
+    }
+
+    /*
+     *  Report every occurrence of every key in the text.  Return the number of matches.
+     */
+    public long scan(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        long matches = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (state != 0)
+                matches += report(state, i + 1, handler);
+        }
+        return matches;
+    }
+
+    /*
+     *  Same, reading the text from a Reader until its end; offsets count characters from
+     *  the current position of the reader.  The reader is not closed.
+     */
+    public long scan(Reader in, MatchHandler handler) throws IOException {
+        char[] buffer = new char[8192];
+        long offset = 0;
+        long matches = 0;
+        int state = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                state = step(state, buffer[i]);
+                if (state != 0)
+                    matches += report(state, offset + i + 1, handler);
+            }
+            offset += n;
+        }
+        return matches;
+    }
+
+    /*
+     *  Same, decoding the bytes of a stream with the given character set.  The stream is
+     *  not closed.
+     */
+    public long scan(InputStream in, Charset charset, MatchHandler handler) throws IOException {
+        return scan(new InputStreamReader(in, charset), handler);
+    }
+
+    /*
+     *  Return the key with the given number, as reported to a MatchHandler.
+     */
+    public String getKey(int key) {
+        if (key <= 0 || key >= inChar.length || !isKey(key))
+            throw new IllegalArgumentException("No key number " + key);
+        char[] chars = new char[depth[key]];
+        for (int s = key; s != 0; s = parent[s])
+            chars[depth[s] - 1] = inChar[s];
+        return new String(chars);
+    }
+
+    /*
+     *  Number of states of the automaton, including the root.
+     */
+    public int getStateCount() {
+        return inChar.length;
+    }
+
+    //  helper methods
+
+    /*
+     * The state after reading character c in state s, following fail links as needed.
+     */
+    private int step(int s, char c) {
+        while (true) {
+            int next = s == 0 ? (c < ROOT_TABLE_SIZE ? rootTable[c] : findChild(0, c)) : findChild(s, c);
+            if (next >= 0)
+                return next;
+            if (s == 0)
+                return 0;
+            s = fail[s];
+        }
+    }
+
+    /*
+     * Report the keys that end at 'end' in the current state s.
+     */
+    private int report(int s, long end, MatchHandler handler) {
+        int count = 0;
+        for (int k = isKey(s) ? s : output[s]; k != 0; k = output[k]) {
+            handler.onMatch(end - depth[k], depth[k], k);
+            count++;
+        }
+        return count;
+    }
+
+    /*
+     * Return the child of state s for character c, or -1 (binary search of the children).
+     */
+    private int findChild(int s, char c) {
+        int low = childStart[s];
+        int high = childStart[s + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = inChar[mid];
+            if (midChar < c)
+                low = mid + 1;
+            else if (midChar > c)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private boolean isKey(int s) {
+        return (keyBits[s >>> 6] & (1L << s)) != 0;
+    }
+}
@@ -0,0 +1,312 @@
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  Thread-safe trie with the same insert/contains/getPrefix/getAllPrefixMatches API as Trie.
+ *
+ *  The nodes never change once they are built: an insert copies the nodes on the path
+ *  from the root to the new key (path copying), and then publishes the new root with a
+ *  compare-and-set on the root reference.  The nodes off that path are shared by the
+ *  old and the new version.  Lookups read the root once and work on that version of
+ *  the trie, which is complete and can never change under it, so a reader sees every
+ *  key either before or after a concurrent insert, never half of it.  Nothing takes a
+ *  lock: when two inserts race, the one whose compare-and-set fails copies its path
+ *  again from the other's root, so any number of threads can insert at once.
+ *
+ *  Like Trie, the trie is path-compressed: edges are labelled with strings.
+ */
+
+public class ConcurrentTrie {
+    private final AtomicReference<Node> root;
+
+    // number of keys in the trie, counted once the insert that added a key is published
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Empty trie has just a root node, without children.
+
+    public ConcurrentTrie() {
+        root = new AtomicReference<Node>(new Node("", 0, Node.NO_CHARS, Node.NO_CHILDREN, false));
+    }
+
+    /*
+     * Insert key into the trie.  Concurrent lookups see the key as soon as this returns.
+     */
+    public void insert(String key) {
+        //guard for empty strings
+        if (key.length() == 0)
+            return;
+        while (true) {
+            Node current = root.get();
+            Node newRoot = insert(current, key);
+            //the key is there already
+            if (newRoot == current)
+                return;
+            if (root.compareAndSet(current, newRoot)) {
+                size.incrementAndGet();
+                return;
+            }
+            //another insert was published first: copy the path again from its root
+        }
+    }
+
+    // insert each key in the list (keys)
+
+    public void loadKeys(ArrayList<String> keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            insert(keys.get(i));
+        }
+    }
+
+    /*
+     *  Return true if key is contained in the trie, false otherwise.
+     */
+    public boolean contains(String key) {
+        //the trie always contains the empty string
+        if (key.length() == 0)
+            return true;
+        Node res = getPrefixNode(root.get(), key);
+        return res.depth == key.length() && res.endOfKey;
+    }
+
+    /*
+     * Return the longest prefix of the key that is also a prefix of some key in the trie.
+     */
+    public String getPrefix(String key) {
+        Node node = getPrefixNode(root.get(), key);
+        int length = node.depth;
+        if (length < key.length()) {
+            //add the characters matched on the edge the key leaves the trie in
+            Node child = node.getChild(key.charAt(length));
+            if (child != null)
+                length += child.matchLabel(key, length);
+        }
+        return key.substring(0, length);
+    }
+
+    /*
+     *  Return a list of all keys in the trie that have the given prefix.
+     */
+    public ArrayList<String> getAllPrefixMatches(String prefix) {
+        return getAllPrefixMatches(prefix, Integer.MAX_VALUE);
+    }
+
+    /*
+     *  Return the first 'limit' keys with the given prefix, in character order.
+     */
+    public ArrayList<String> getAllPrefixMatches(String prefix, int limit) {
+        ArrayList<String> stringList = new ArrayList<String>();
+        Iterator<String> it = prefixIterator(prefix);
+        while (stringList.size() < limit && it.hasNext())
+            stringList.add(it.next());
+        return stringList;
+    }
+
+    /*
+     *  Iterate over the keys with the given prefix, in character order.  The iterator
+     *  works on the version of the trie that was current when it was created, so it is
+     *  not affected by later inserts.
+     */
+    public Iterator<String> prefixIterator(String prefix) {
+        return new PrefixIterator(root.get(), prefix);
+    }
+
+    /*
+     *  Return the number of keys in the trie.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    //  helper methods
+
+    /*
+     * Return a copy of node (whose prefix is a prefix of key) with key inserted below it,
+     * sharing every node that does not change, or node itself if key is already there.
+     */
+    private static Node insert(Node node, String key) {
+        int idx = node.depth;
+        if (idx == key.length())
+            return node.endOfKey ? node : new Node(node.label, node.depth, node.childChars, node.children, true);
+        char c = key.charAt(idx);
+        int pos = Arrays.binarySearch(node.childChars, c);
+        if (pos < 0) {
+            //no edge starts with the next character: the rest of the key is one new edge
+            Node leaf = new Node(key.substring(idx), key.length(), Node.NO_CHARS, Node.NO_CHILDREN, true);
+            return node.withChild(-pos - 1, leaf, true);
+        }
+        Node child = node.children[pos];
+        int common = child.matchLabel(key, idx);
+        if (common == child.label.length()) {
+            //the key goes on below the child
+            Node newChild = insert(child, key);
+            return newChild == child ? node : node.withChild(pos, newChild, false);
+        }
+        //the key leaves the trie in the middle of the child's edge, so split it there
+        Node lower = new Node(child.label.substring(common), child.depth, child.childChars, child.children, child.endOfKey);
+        String upperLabel = child.label.substring(0, common);
+        Node middle;
+        if (idx + common == key.length()) {
+            middle = new Node(upperLabel, idx + common, new char[] { lower.label.charAt(0) }, new Node[] { lower }, true);
+        } else {
+            Node leaf = new Node(key.substring(idx + common), key.length(), Node.NO_CHARS, Node.NO_CHILDREN, true);
+            middle = new Node(upperLabel, idx + common, Node.NO_CHARS, Node.NO_CHILDREN, false);
+            middle = middle.withChild(0, lower, true);
+            middle = middle.withChild(leaf.label.charAt(0) < lower.label.charAt(0) ? 0 : 1, leaf, true);
+        }
+        return node.withChild(pos, middle, false);
+    }
+
+    /*
+     * Return the deepest node below 'from' whose prefix is a prefix of the key.
+     */
+    private static Node getPrefixNode(Node from, String key) {
+        Node res = from;
+        while (res.depth < key.length()) {
+            Node child = res.getChild(key.charAt(res.depth));
+            if (child == null || child.matchLabel(key, res.depth) < child.label.length())
+                break;
+            res = child;
+        }
+        return res;
+    }
+
+    /*
+     *  Depth-first walk over the keys of one version of the trie, without recursion
+     *  (see Trie.PrefixIterator).
+     */
+    private static class PrefixIterator implements Iterator<String> {
+        private Node[] nodes = new Node[16];
+        private int[] positions = new int[16];
+        private int top = -1;
+        private final StringBuilder buffer = new StringBuilder();
+        private String nextKey;
+
+        PrefixIterator(Node root, String prefix) {
+            Node start = getPrefixNode(root, prefix);
+            if (start.depth < prefix.length()) {
+                //if the prefix ends inside the next edge, every key below that edge matches
+                Node child = start.getChild(prefix.charAt(start.depth));
+                if (child != null && start.depth + child.matchLabel(prefix, start.depth) == prefix.length())
+                    start = child;
+                else
+                    start = null;
+            }
+            if (start != null) {
+                buffer.append(prefix, 0, start.depth - start.label.length()).append(start.label);
+                push(start);
+            }
+            nextKey = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        public String next() {
+            if (nextKey == null)
+                throw new NoSuchElementException();
+            String key = nextKey;
+            nextKey = advance();
+            return key;
+        }
+
+        private String advance() {
+            while (top >= 0) {
+                Node node = nodes[top];
+                int i = positions[top];
+                if (i < 0) {
+                    //first visit: the node's own key comes before the keys of its children
+                    positions[top] = 0;
+                    if (node.endOfKey)
+                        return buffer.substring(0, node.depth);
+                    continue;
+                }
+                if (i == node.children.length) {
+                    top--;
+                    continue;
+                }
+                positions[top] = i + 1;
+                buffer.setLength(node.depth);
+                buffer.append(node.children[i].label);
+                push(node.children[i]);
+            }
+            return null;
+        }
+
+        private void push(Node node) {
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                positions = Arrays.copyOf(positions, top * 2);
+            }
+            nodes[top] = node;
+            positions[top] = -1;
+        }
+    }
+
+    /*
+     *  Immutable node.  Its children are sorted by the first character of their labels,
+     *  which childChars repeats for the binary search.  Since every field is final, a
+     *  node is seen complete by any thread that reaches it from a published root.
+     */
+    private static final class Node {
+        static final char[] NO_CHARS = new char[0];
+        static final Node[] NO_CHILDREN = new Node[0];
+
+        final String label;         // Characters on the edge between this node and its parent.
+        final int depth;            // Length of the prefix of this node.
+        final char[] childChars;
+        final Node[] children;
+        final boolean endOfKey;
+
+        Node(String label, int depth, char[] childChars, Node[] children, boolean endOfKey) {
+            this.label = label;
+            this.depth = depth;
+            this.childChars = childChars;
+            this.children = children;
+            this.endOfKey = endOfKey;
+        }
+
+        Node getChild(char c) {
+            int pos = Arrays.binarySearch(childChars, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        /*
+         *  Number of characters of the label that match key, starting at key.charAt(from).
+         */
+        int matchLabel(String key, int from) {
+            int n = Math.min(label.length(), key.length() - from);
+            int i = 0;
+            while (i < n && label.charAt(i) == key.charAt(from + i))
+                i++;
+            return i;
+        }
+
+        /*
+         *  Copy of this node with 'child' inserted at position pos of the children, or
+         *  replacing the child at that position.
+         */
+        Node withChild(int pos, Node child, boolean insert) {
+            char[] chars;
+            Node[] kids;
+            if (insert) {
+                chars = new char[childChars.length + 1];
+                kids = new Node[children.length + 1];
+                System.arraycopy(childChars, 0, chars, 0, pos);
+                System.arraycopy(children, 0, kids, 0, pos);
+                System.arraycopy(childChars, pos, chars, pos + 1, childChars.length - pos);
+                System.arraycopy(children, pos, kids, pos + 1, children.length - pos);
+                chars[pos] = child.label.charAt(0);
+            } else {
+                chars = childChars;
+                kids = children.clone();
+            }
+            kids[pos] = child;
+            return new Node(label, depth, chars, kids, endOfKey);
+        }
+    }
+}
@@ -0,0 +1,464 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ *  Immutable form of a Trie, made by Trie.freeze().
+ *
+ *  The nodes of the radix trie are numbered in breadth-first order, with the root as
+ *  node 0, so the children of a node have consecutive numbers and the whole trie fits
+ *  in a few primitive arrays:
+ *
+ *    childStart.get(i) .. childStart.get(i+1)-1   the children of node i, sorted by character
+ *    labelStart.get(i) .. labelStart.get(i+1)-1   the label of the edge into node i, in labelChars
+ *    bit i of keyBits                     set if the prefix of node i is a key
+ *
+ *  There is no object per node for the garbage collector to trace, and since nothing
+ *  ever changes after construction, a FrozenTrie can be shared by any number of
+ *  threads without locking.
+ *
+ *  save() writes the arrays to a file as they are, and open() maps such a file back:
+ *  the queries then read the mapped pages directly, so opening even a large
+ *  dictionary takes no time and no heap.  The file is a header of six ints (MAGIC,
+ *  VERSION, size, number of nodes, number of label characters, 0) followed by the
+ *  four arrays in the order above, each starting at a multiple of 8 bytes, all in
+ *  little-endian byte order.
+ */
+
+public final class FrozenTrie {
+    private static final int MAGIC = 0x54524945;   // "TRIE"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    // the arrays, either wrapped or mapped from a file
+    private final IntBuffer childStart;
+    private final IntBuffer labelStart;
+    private final CharBuffer labelChars;
+    private final LongBuffer keyBits;
+    private final int size;
+
+    FrozenTrie(int[] childStart, int[] labelStart, char[] labelChars, long[] keyBits, int size) {
+        this(IntBuffer.wrap(childStart), IntBuffer.wrap(labelStart), CharBuffer.wrap(labelChars),
+                LongBuffer.wrap(keyBits), size);
+    }
+
+    private FrozenTrie(IntBuffer childStart, IntBuffer labelStart, CharBuffer labelChars, LongBuffer keyBits, int size) {
+        this.childStart = childStart;
+        this.labelStart = labelStart;
+        this.labelChars = labelChars;
+        this.keyBits = keyBits;
+        this.size = size;
+    }
+
+    /*
+     *  Map a file written by save().  The file can be closed or replaced afterwards (on
+     *  most systems), but it must not be written to while the trie is in use.
+     */
+    public static FrozenTrie open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException(path + " is not a trie file");
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(path + " is not a trie file");
+            if (header.getInt(4) != VERSION)
+                throw new IOException(path + " has an unknown trie file version " + header.getInt(4));
+            int size = header.getInt(8);
+            int nodes = header.getInt(12);
+            int labelLength = header.getInt(16);
+            long[] offsets = sectionOffsets(nodes, labelLength);
+            if (channel.size() < offsets[4])
+                throw new IOException(path + " is truncated");
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            return new FrozenTrie(
+                    map(channel, mode, offsets[0], 4L * (nodes + 1)).asIntBuffer(),
+                    map(channel, mode, offsets[1], 4L * (nodes + 1)).asIntBuffer(),
+                    map(channel, mode, offsets[2], 2L * labelLength).asCharBuffer(),
+                    map(channel, mode, offsets[3], offsets[4] - offsets[3]).asLongBuffer(),
+                    size);
+        }
+    }
+
+    /*
+     *  Write the trie to a file, in the format open() maps.
+     */
+    public void save(Path path) throws IOException {
+        int nodes = getNodeCount();
+        int labelLength = labelChars.limit();
+        long[] offsets = sectionOffsets(nodes, labelLength);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+            MappedByteBuffer header = map(channel, mode, 0, HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(nodes).putInt(labelLength).putInt(0);
+            MappedByteBuffer[] sections = {
+                    map(channel, mode, offsets[0], offsets[1] - offsets[0]),
+                    map(channel, mode, offsets[1], offsets[2] - offsets[1]),
+                    map(channel, mode, offsets[2], offsets[3] - offsets[2]),
+                    map(channel, mode, offsets[3], offsets[4] - offsets[3]) };
+            //absolute gets never move the positions, so duplicate() covers the whole arrays
+            sections[0].asIntBuffer().put(childStart.duplicate());
+            sections[1].asIntBuffer().put(labelStart.duplicate());
+            sections[2].asCharBuffer().put(labelChars.duplicate());
+            sections[3].asLongBuffer().put(keyBits.duplicate());
+            header.force();
+            for (MappedByteBuffer section : sections)
+                section.force();
+        }
+    }
+
+    /*
+     *  Return true if key is one of the keys of the trie, false otherwise.
+     */
+    public boolean contains(String key) {
+        //the trie always contains the empty string
+        if (key.length() == 0)
+            return true;
+        long match = getPrefixNode(key);
+        return depthOf(match) == key.length() && isKey(nodeOf(match));
+    }
+
+    /*
+     * Return the longest prefix of the key that is also a prefix of some key in the trie.
+     */
+    public String getPrefix(String key) {
+        long match = getPrefixNode(key);
+        int length = depthOf(match);
+        if (length < key.length()) {
+            //add the characters matched on the edge the key leaves the trie in
+            int child = getChild(nodeOf(match), key.charAt(length));
+            if (child >= 0)
+                length += matchLabel(child, key, length);
+        }
+        return key.substring(0, length);
+    }
+
+    /*
+     *  Return a list of all keys in the trie that have the given prefix, in the same
+     *  order as Trie.getAllPrefixMatches().
+     */
+    public ArrayList<String> getAllPrefixMatches(String prefix) {
+        return getAllPrefixMatches(prefix, Integer.MAX_VALUE);
+    }
+
+    /*
+     *  Return the first 'limit' keys with the given prefix, in character order.  Only
+     *  the part of the trie holding these keys is visited.
+     */
+    public ArrayList<String> getAllPrefixMatches(String prefix, int limit) {
+        ArrayList<String> stringList = new ArrayList<String>();
+        Iterator<String> it = prefixIterator(prefix);
+        while (stringList.size() < limit && it.hasNext())
+            stringList.add(it.next());
+        return stringList;
+    }
+
+    /*
+     *  Iterate over the keys with the given prefix, in character order, finding them one
+     *  at a time as next() is called (see Trie.prefixIterator()).
+     */
+    public Iterator<String> prefixIterator(String prefix) {
+        return new PrefixIterator(prefix, null);
+    }
+
+    /*
+     *  Same, but only the keys that come after 'startAfter' (in character order): pass
+     *  the last key of one page to get the next page.
+     */
+    public Iterator<String> prefixIterator(String prefix, String startAfter) {
+        return new PrefixIterator(prefix, startAfter);
+    }
+
+    public Stream<String> prefixStream(String prefix) {
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(prefixIterator(prefix),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /*
+     *  Return the number of keys in the trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getNodeCount() {
+        return childStart.limit() - 1;
+    }
+
+    /*
+     *  Bytes taken by the arrays (object sizes rounded up to 8 bytes, 16-byte headers),
+     *  on the heap or in the mapped file.
+     */
+    public long getMemoryFootprint() {
+        return align(16 + 4L * childStart.limit()) + align(16 + 4L * labelStart.limit())
+                + align(16 + 2L * labelChars.limit()) + align(16 + 8L * keyBits.limit());
+    }
+
+    public double getBytesPerKey() {
+        return size == 0 ? 0 : (double) getMemoryFootprint() / size;
+    }
+
+    //  helper methods
+
+    /*
+     * Walk down from the root as long as whole edges match the key.  Return the deepest
+     * node reached and the length of its prefix, packed as (node << 32) | depth.
+     */
+    private long getPrefixNode(String key) {
+        int node = 0;
+        int depth = 0;
+        while (depth < key.length()) {
+            int child = getChild(node, key.charAt(depth));
+            if (child < 0)
+                break;
+            int length = labelLength(child);
+            if (matchLabel(child, key, depth) < length)
+                break;
+            node = child;
+            depth += length;
+        }
+        return ((long) node << 32) | depth;
+    }
+
+    /*
+     * Return the highest node whose prefix starts with the given prefix, and the length
+     * of its prefix, packed as in getPrefixNode(), or -1 if there is none.
+     */
+    private long getMatchNode(String prefix) {
+        long match = getPrefixNode(prefix);
+        int depth = depthOf(match);
+        if (depth == prefix.length())
+            return match;
+        //if the prefix ends inside the next edge, every key below that edge matches
+        int child = getChild(nodeOf(match), prefix.charAt(depth));
+        if (child >= 0 && depth + matchLabel(child, prefix, depth) == prefix.length())
+            return ((long) child << 32) | (depth + labelLength(child));
+        return -1;
+    }
+
+    private static int nodeOf(long match) {
+        return (int) (match >>> 32);
+    }
+
+    private static int depthOf(long match) {
+        return (int) match;
+    }
+
+    /*
+     * Return the child of the node whose label starts with c, or -1.  The children are
+     * sorted by the first character of their labels, so this is a binary search.
+     */
+    private int getChild(int node, char c) {
+        int child = childIndex(node, c);
+        return child < childStart.get(node + 1) && firstChar(child) == c ? child : -1;
+    }
+
+    /*
+     * Return the first child of the node whose label starts with c or a larger character,
+     * or childStart.get(node + 1) if there is none.
+     */
+    private int childIndex(int node, char c) {
+        int low = childStart.get(node);
+        int high = childStart.get(node + 1);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (firstChar(mid) < c)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private char firstChar(int node) {
+        return labelChars.get(labelStart.get(node));
+    }
+
+    private int labelLength(int node) {
+        return labelStart.get(node + 1) - labelStart.get(node);
+    }
+
+    /*
+     *  Number of characters of the node's label that match key, starting at key.charAt(from).
+     */
+    private int matchLabel(int node, String key, int from) {
+        int start = labelStart.get(node);
+        int n = Math.min(labelStart.get(node + 1) - start, key.length() - from);
+        int i = 0;
+        while (i < n && labelChars.get(start + i) == key.charAt(from + i))
+            i++;
+        return i;
+    }
+
+    private boolean isKey(int node) {
+        return (keyBits.get(node >>> 6) & (1L << node)) != 0;
+    }
+
+    /*
+     *  Depth-first walk over the keys of a subtree, without recursion, like
+     *  Trie.PrefixIterator.  The stack holds the ids of the nodes on the path from the
+     *  subtree's root to the current node, the lengths of their prefixes, and the id of
+     *  the next child to visit for each (-1 if the node itself has not been looked at
+     *  yet).  The current key is built in a single buffer.
+     */
+    private class PrefixIterator implements Iterator<String> {
+        private int[] nodes = new int[16];
+        private int[] depths = new int[16];
+        private int[] positions = new int[16];
+        private int top = -1;
+        private final StringBuilder buffer = new StringBuilder();
+        private String nextKey;
+
+        PrefixIterator(String prefix, String startAfter) {
+            long match = getMatchNode(prefix);
+            if (match >= 0) {
+                int node = nodeOf(match);
+                int depth = depthOf(match);
+                buffer.append(prefix, 0, depth - labelLength(node));
+                buffer.append(labelChars, labelStart.get(node), labelStart.get(node + 1));
+                push(node, depth);
+                if (startAfter != null)
+                    seek(startAfter);
+            }
+            nextKey = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        public String next() {
+            if (nextKey == null)
+                throw new NoSuchElementException();
+            String key = nextKey;
+            nextKey = advance();
+            return key;
+        }
+
+        /*
+         * Continue the walk up to the next node that is the end of a key, and return that key.
+         */
+        private String advance() {
+            while (top >= 0) {
+                int node = nodes[top];
+                int child = positions[top];
+                if (child < 0) {
+                    //first visit: the node's own key comes before the keys of its children
+                    positions[top] = childStart.get(node);
+                    if (isKey(node))
+                        return buffer.substring(0, depths[top]);
+                    continue;
+                }
+                if (child == childStart.get(node + 1)) {
+                    top--;
+                    continue;
+                }
+                positions[top] = child + 1;
+                descend(child);
+            }
+            return null;
+        }
+
+        /*
+         * Set up the stack so that the walk starts with the first key after 'key': follow
+         * the path of 'key' down, skipping the children that only hold smaller keys.
+         */
+        private void seek(String key) {
+            String path = buffer.toString();
+            if (!key.startsWith(path)) {
+                //either the whole subtree comes after the key, or all of it comes before
+                if (path.compareTo(key) < 0)
+                    top = -1;
+                return;
+            }
+            while (true) {
+                int node = nodes[top];
+                int depth = depths[top];
+                //the node's own key is not after 'key'
+                positions[top] = childStart.get(node);
+                if (key.length() == depth)
+                    return;
+                char c = key.charAt(depth);
+                int child = childIndex(node, c);
+                if (child == childStart.get(node + 1) || firstChar(child) != c) {
+                    //the next children start with larger characters
+                    positions[top] = child;
+                    return;
+                }
+                int common = matchLabel(child, key, depth);
+                if (common == labelLength(child)) {
+                    //the key goes on below the child
+                    positions[top] = child + 1;
+                    descend(child);
+                    continue;
+                }
+                //the key leaves the trie inside the child's edge: either the child's whole
+                //subtree comes after the key, or all of it comes before
+                if (depth + common == key.length() || labelChars.get(labelStart.get(child) + common) > key.charAt(depth + common))
+                    positions[top] = child;
+                else
+                    positions[top] = child + 1;
+                return;
+            }
+        }
+
+        // Push a child of the node on top of the stack, with its label added to the buffer.
+
+        private void descend(int child) {
+            int depth = depths[top];
+            buffer.setLength(depth);
+            buffer.append(labelChars, labelStart.get(child), labelStart.get(child + 1));
+            push(child, depth + labelLength(child));
+        }
+
+        private void push(int node, int depth) {
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                depths = Arrays.copyOf(depths, top * 2);
+                positions = Arrays.copyOf(positions, top * 2);
+            }
+            nodes[top] = node;
+            depths[top] = depth;
+            positions[top] = -1;
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /*
+     * File offsets of the four arrays, and the file size as the last element.
+     */
+    private static long[] sectionOffsets(int nodes, int labelLength) {
+        long[] offsets = new long[5];
+        offsets[0] = HEADER_SIZE;
+        offsets[1] = offsets[0] + align(4L * (nodes + 1));
+        offsets[2] = offsets[1] + align(4L * (nodes + 1));
+        offsets[3] = offsets[2] + align(2L * labelLength);
+        offsets[4] = offsets[3] + 8L * ((nodes + 63) >>> 6);
+        return offsets;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Trie too large: one of its arrays takes more than 2 GB");
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+}
@@ -0,0 +1,208 @@
+package a4q2;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ *  Read-only graph in compressed sparse row (CSR) form.  The String keys are mapped to
+ *  dense int ids 0..n-1 once, and the edges are kept in primitive arrays instead of one
+ *  Edge object per edge:
+ *
+ *    offsets[v] .. offsets[v+1]-1   the edges out of vertex v, in the order they were added
+ *    targets[e], weights[e]         the end vertex and the weight of edge e
+ *
+ *  So the edges of a vertex are contiguous in memory, and a traversal only reads int
+ *  arrays.  A CsrGraph is made by a Builder, or by Graph.freeze() from a mutable Graph.
+ *  Nothing changes after construction, so any number of threads can read it at once.
+ *  CsrShapeGraph runs the path traversals of ShapeGraph on a CsrGraph<Shape>.
+ */
+public class CsrGraph<T> {
+
+	private final HashMap<String, Integer> ids;
+	private final String[] keys;
+	private final Object[] elements;
+	private final int[] offsets;
+	private final int[] targets;
+	private final double[] weights;   // null when every edge has weight 0
+
+	private CsrGraph(HashMap<String, Integer> ids, String[] keys, Object[] elements,
+			int[] offsets, int[] targets, double[] weights) {
+		this.ids = ids;
+		this.keys = keys;
+		this.elements = elements;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+	}
+
+	public int getVertexCount() {
+		return keys.length;
+	}
+
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	/*
+	 * Return the id of the vertex with the given key, or -1 if there is none.
+	 */
+	public int getId(String key) {
+		Integer id = ids.get(key);
+		return id == null ? -1 : id;
+	}
+
+	public String getKey(int v) {
+		return keys[v];
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getElement(int v) {
+		return (T) elements[v];
+	}
+
+	public int getDegree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	// The edges out of v are the numbers edgeStart(v) .. edgeEnd(v)-1.
+
+	public int edgeStart(int v) {
+		return offsets[v];
+	}
+
+	public int edgeEnd(int v) {
+		return offsets[v + 1];
+	}
+
+	public int getTarget(int e) {
+		return targets[e];
+	}
+
+	public double getWeight(int e) {
+		return weights == null ? 0 : weights[e];
+	}
+
+	/*
+	 * Return the ids of the vertices reachable from source, in depth-first order (the
+	 * order of a recursive depth-first search that follows the edges in the order they
+	 * were added).  The search uses an explicit stack, so deep graphs are no problem.
+	 */
+	public int[] depthFirstOrder(int source) {
+		int n = keys.length;
+		boolean[] visited = new boolean[n];
+		int[] order = new int[n];
+		int count = 0;
+		//each vertex is pushed at most once, with the next of its edges to follow
+		int[] stack = new int[n];
+		int[] nextEdge = new int[n];
+		int top = 0;
+		visited[source] = true;
+		order[count++] = source;
+		stack[0] = source;
+		nextEdge[0] = offsets[source];
+		while (top >= 0) {
+			int e = nextEdge[top];
+			if (e == offsets[stack[top] + 1]) {
+				top--;
+				continue;
+			}
+			nextEdge[top] = e + 1;
+			int w = targets[e];
+			if (!visited[w]) {
+				visited[w] = true;
+				order[count++] = w;
+				top++;
+				stack[top] = w;
+				nextEdge[top] = offsets[w];
+			}
+		}
+		return Arrays.copyOf(order, count);
+	}
+
+	//  override, same format as Graph.toString()
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int v = 0; v < keys.length; v++) {
+			result.append(keys[v]).append('\n');
+			for (int e = offsets[v]; e < offsets[v + 1]; e++)
+				result.append("   edge to Vertex ").append(keys[targets[e]]).append('\n');
+		}
+		return result.toString();
+	}
+
+	/*
+	 *  Collects the vertices and edges of a CsrGraph, without an object per edge, and
+	 *  sorts the edges by start vertex in build().
+	 */
+	public static class Builder<T> {
+
+		private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		private final ArrayList<String> keys = new ArrayList<String>();
+		private final ArrayList<T> elements = new ArrayList<T>();
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private double[] weights = new double[16];
+		private int edgeCount;
+		private boolean weighted;
+
+		/*
+		 * Add a vertex, or replace the element of the vertex with that key.
+		 */
+		public void addVertex(String key, T element) {
+			Integer id = ids.get(key);
+			if (id != null) {
+				elements.set(id, element);
+			} else {
+				ids.put(key, keys.size());
+				keys.add(key);
+				elements.add(element);
+			}
+		}
+
+		public void addEdge(String start, String end) {
+			addEdge(start, end, 0);
+		}
+
+		public void addEdge(String start, String end, double weight) {
+			if (edgeCount == sources.length) {
+				sources = Arrays.copyOf(sources, edgeCount * 2);
+				targets = Arrays.copyOf(targets, edgeCount * 2);
+				weights = Arrays.copyOf(weights, edgeCount * 2);
+			}
+			sources[edgeCount] = idOf(start);
+			targets[edgeCount] = idOf(end);
+			weights[edgeCount] = weight;
+			weighted |= weight != 0;
+			edgeCount++;
+		}
+
+		public CsrGraph<T> build() {
+			int n = keys.size();
+			//counting sort of the edges by start vertex, which keeps their order per vertex
+			int[] offsets = new int[n + 1];
+			for (int e = 0; e < edgeCount; e++)
+				offsets[sources[e] + 1]++;
+			for (int v = 0; v < n; v++)
+				offsets[v + 1] += offsets[v];
+			int[] next = Arrays.copyOf(offsets, n);
+			int[] sortedTargets = new int[edgeCount];
+			double[] sortedWeights = weighted ? new double[edgeCount] : null;
+			for (int e = 0; e < edgeCount; e++) {
+				int pos = next[sources[e]]++;
+				sortedTargets[pos] = targets[e];
+				if (weighted)
+					sortedWeights[pos] = weights[e];
+			}
+			return new CsrGraph<T>(new HashMap<String, Integer>(ids), keys.toArray(new String[n]),
+					elements.toArray(), offsets, sortedTargets, sortedWeights);
+		}
+
+		private int idOf(String key) {
+			Integer id = ids.get(key);
+			if (id == null)
+				throw new IllegalArgumentException("No vertex with key " + key);
+			return id;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package a4q2;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/*
+ *  The traversals of ShapeGraph over a CsrGraph<Shape>: the areas of the shapes are
+ *  read once into a float array, so a traversal only reads int and float arrays, and
+ *  never touches a Vertex, an Edge or a Shape.  Build one from a ShapeGraph with
+ *  new CsrShapeGraph(shapeGraph.freeze()), or from a CsrGraph.Builder for graphs too
+ *  large to hold as objects.  The shapes' areas are taken at construction time.
+ *  Vertices without a shape follow the rule of ShapeGraph: a traversal from one finds
+ *  no path, and one that reaches one from another vertex throws a NullPointerException.
+ *
+ *  Like ShapeGraph, each thread keeps its own traversal state, so any number of threads
+ *  can traverse the same CsrShapeGraph at once.
+ */
+public class CsrShapeGraph {
+
+	/*
+	 *  Receives the paths found by traverseFrom(), as vertex ids: path[0] .. path[length-1],
+	 *  from the start vertex on.  The array is the traversal's own buffer, only valid
+	 *  during the call.
+	 */
+	public interface IdPathVisitor {
+		void visitPath(int[] path, int length);
+	}
+
+	private final CsrGraph<Shape> graph;
+	private final float[] areas;
+	private final boolean[] hasShape;
+
+	// traversal state, one per thread
+	private final ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(Traversal::new);
+
+	public CsrShapeGraph(CsrGraph<Shape> graph) {
+		this.graph = graph;
+		this.areas = new float[graph.getVertexCount()];
+		this.hasShape = new boolean[areas.length];
+		for (int v = 0; v < areas.length; v++) {
+			Shape shape = graph.getElement(v);
+			hasShape[v] = shape != null;
+			areas[v] = shape == null ? 0 : shape.getArea();
+		}
+	}
+
+	public CsrGraph<Shape> getGraph() {
+		return graph;
+	}
+
+	/*
+	 * Same as ShapeGraph.traverseFrom(key, threshold): the paths from the vertex with the
+	 * given key whose total area is above the threshold, in the same order.
+	 */
+	public LinkedList<LinkedList<String>> traverseFrom(String key, float threshold) {
+		LinkedList<LinkedList<String>> masterList = new LinkedList<>();
+		traverseFrom(key, threshold, path -> masterList.add(new LinkedList<String>(path)));
+		return masterList;
+	}
+
+	/*
+	 * Same as ShapeGraph.traverseFrom(key, threshold, visitor).  The path handed to the
+	 * visitor is a read-only view of the traversal's id buffer, mapping ids to keys.
+	 */
+	public void traverseFrom(String key, float threshold, ShapeGraph.PathVisitor visitor) {
+		KeyPath view = new KeyPath();
+		traverseFrom(key, threshold, (path, length) -> {
+			view.path = path;
+			view.length = length;
+			visitor.visitPath(view);
+		});
+	}
+
+	/*
+	 * Same, with the paths as vertex ids.
+	 */
+	public void traverseFrom(String key, float threshold, IdPathVisitor visitor) {
+		int source = graph.getId(key);
+		//make sure we are using a valid vertex
+		if (source < 0 || !hasShape[source])
+			return;
+		Traversal traversal = traversals.get();
+		//a visitor that starts another traversal on this thread gets a state of its own
+		if (traversal.busy)
+			traversal = new Traversal();
+		traversal.begin(areas.length);
+		try {
+			traversal.run(source, threshold, visitor);
+		} finally {
+			traversal.busy = false;
+		}
+	}
+
+	/*
+	 *  State of one traversal at a time: the visited stamps with the epoch of the current
+	 *  traversal (see ShapeGraph.TraversalContext), and the stack.  For each vertex on the
+	 *  current path, the stack holds its id, the next of its edges to follow and the path
+	 *  value; each vertex is visited at most once, so the arrays never need more than one
+	 *  element per vertex.
+	 */
+	private class Traversal {
+		private int[] stamps = new int[0];
+		private int epoch;
+		private boolean busy;
+		private int[] path = new int[0];
+		private int[] nextEdge = new int[0];
+		private float[] pathValues = new float[0];
+
+		void begin(int vertexCount) {
+			busy = true;
+			if (stamps.length < vertexCount) {
+				stamps = new int[vertexCount];
+				path = new int[vertexCount];
+				nextEdge = new int[vertexCount];
+				pathValues = new float[vertexCount];
+			}
+			if (++epoch == 0) {
+				//after 2^32 traversals the old stamps could look current again
+				Arrays.fill(stamps, 0);
+				epoch = 1;
+			}
+		}
+
+		void run(int source, float threshold, IdPathVisitor visitor) {
+			int top = 0;
+			path[0] = source;
+			nextEdge[0] = graph.edgeStart(source);
+			pathValues[0] = areas[source];
+			stamps[source] = epoch;
+			if (pathValues[0] > threshold)
+				visitor.visitPath(path, 1);
+			while (top >= 0) {
+				int e = nextEdge[top];
+				if (e == graph.edgeEnd(path[top])) {
+					//done with this vertex: back to its parent
+					top--;
+					continue;
+				}
+				nextEdge[top] = e + 1;
+				int w = graph.getTarget(e);
+				//if not visited, visit it with (pathValue = current path Value + area of the neighboring vertex)
+				if (stamps[w] != epoch) {
+					if (!hasShape[w])
+						throw new NullPointerException("Vertex " + graph.getKey(w) + " has no shape");
+					stamps[w] = epoch;
+					pathValues[top + 1] = pathValues[top] + areas[w];
+					top++;
+					path[top] = w;
+					nextEdge[top] = graph.edgeStart(w);
+					if (pathValues[top] > threshold)
+						visitor.visitPath(path, top + 1);
+				}
+			}
+		}
+	}
+
+	// A path of vertex ids seen as the list of their keys.
+
+	private class KeyPath extends AbstractList<String> {
+		int[] path;
+		int length;
+
+		@Override
+		public String get(int i) {
+			if (i < 0 || i >= length)
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + length);
+			return graph.getKey(path[i]);
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+	}
+}
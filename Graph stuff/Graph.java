@@ -1,22 +1,29 @@
 package a4q2;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 
 public class Graph<T> {
 
 	HashMap<String, Vertex<T>> 	vertexMap;
 
+	// dense ids of the keys, 0, 1, 2, ... in the order they were first added; a key
+	// keeps its id when its vertex is replaced
+	HashMap<String, Integer>	vertexIds;
+
 	// constructor
 
 	public Graph()              			  	
 	{	
 		vertexMap   = new HashMap<String, Vertex<T>>();			
+		vertexIds   = new HashMap<String, Integer>();
 	}  
 
 	public void addVertex(String key, Vertex<T> vertex)   		  
 	{	
 		vertexMap.put(key, vertex);
+		vertexIds.putIfAbsent(key, vertexIds.size());
 		vertex.adjList = new LinkedList<Edge>();
 	}	
 	
@@ -29,6 +36,24 @@ public class Graph<T> {
 		vertexMap.get(start).adjList.add(  new Edge( vertexMap.get(end)) );	
 	}
 
+	/*
+	 * Return a read-only copy of the graph in compressed sparse row form, with the same
+	 * vertices, elements and edges (in the same order for each vertex).
+	 */
+	public CsrGraph<T> freeze()
+	{
+		CsrGraph.Builder<T> builder = new CsrGraph.Builder<T>();
+		for( Map.Entry<String, Vertex<T>> entry : vertexMap.entrySet() ){
+			builder.addVertex(entry.getKey(), entry.getValue().element);
+		}
+		for( Map.Entry<String, Vertex<T>> entry : vertexMap.entrySet() ){
+			for( Edge e : entry.getValue().adjList ){
+				builder.addEdge(entry.getKey(), e.getEndVertex().key, e.weight);
+			}
+		}
+		return builder.build();
+	}
+
 	//  override
 	@Override
 	public String toString()
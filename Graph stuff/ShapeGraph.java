@@ -4,9 +4,15 @@ import java.util.LinkedList;
 import java.util.Set;
 //needed to scan all vertices in the hash map below
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class ShapeGraph extends Graph<Shape> {
 
+	// traversal state for traverseFrom() calls without a context, one per thread
+	private final ThreadLocal<TraversalContext> contexts = ThreadLocal.withInitial(TraversalContext::new);
+
 	public ShapeGraph() {
 	}
 
@@ -18,59 +24,293 @@ public class ShapeGraph extends Graph<Shape> {
 	}
 
 
+	/*
+	 *  Receives the paths found by traverseFrom().  The list holds the keys of the path,
+	 *  from the start vertex on; it is a read-only view of a buffer that the traversal
+	 *  keeps changing, so it is only valid during the call (copy it to keep it).
+	 */
+	public interface PathVisitor {
+		void visitPath(List<String> path);
+	}
+
 	/**
 	 * Returns a list of lists, each inner list is a path to a node that can be reached from a given node
 	 * if the total area along the path to that node is greater than the threshold.
-	 * Your solution must be a recursive, depth first implementation for a graph traversal.
 	 * The Strings in the returned list of lists should be the vertex labels (keys).
+	 * A vertex without a shape (null element) has no area: a traversal from it finds no
+	 * path, and one that reaches it from another vertex throws a NullPointerException.
 	 */
 
 	public LinkedList<LinkedList<String>> traverseFrom(String key, float threshold)
 	{
 		LinkedList<LinkedList<String>> masterList = new LinkedList<>();
+		traverseFrom(key, threshold, path -> masterList.add(new LinkedList<String>(path)));
+		return masterList;
+	}
+
+	/*
+	 * Same paths, in the same (depth first) order, handed to the visitor as they are found
+	 * instead of being collected.  The search keeps its own stack, so the depth of the
+	 * graph is not limited by the thread's stack, and all the paths share one buffer.
+	 * The traversal state is kept in a TraversalContext of the calling thread, not in
+	 * the vertices, so several threads can run traversals at once.
+	 */
+	public void traverseFrom(String key, float threshold, PathVisitor visitor)
+	{
+		TraversalContext context = contexts.get();
+		//a visitor that starts another traversal on this thread gets a context of its own
+		if(context.busy)
+			context = new TraversalContext();
+		traverseFrom(key, threshold, visitor, context);
+	}
+
+	/*
+	 * Same, with the given context for the traversal state.  The graph itself is only
+	 * read, so as long as it is not modified, any number of threads can traverse it at
+	 * the same time, each with its own context.
+	 */
+	public void traverseFrom(String key, float threshold, PathVisitor visitor, TraversalContext context)
+	{
+		Vertex<Shape> start = this.vertexMap.get(key);
 		//make sure we are using a valid vertex
-		if(this.vertexMap.get(key)!=null&&this.vertexMap.get(key).element!=null) {
-			//mark all nodes as unvisited
-			for(Map.Entry<String, Vertex<Shape>> entry:this.vertexMap.entrySet())
-				entry.getValue().setVisited(false);
-			//add all the paths calculated by a dfs starting from vertex at key
-			masterList.addAll(dfs(this.vertexMap.get(key), this.vertexMap.get(key).element.getArea(), threshold));
+		if(start==null||start.element==null)
+			return;
+		//a new epoch: no vertex is visited yet, whatever the size of the graph
+		context.begin(vertexIds.size());
+		try {
+			dfs(start, threshold, visitor, context);
+		} finally {
+			context.busy = false;
 		}
-		return masterList;
 	}
 
-	//A helper method that do a Depth first search starting from vertex u and it collect all valid paths
-	//that start from u and end in other vertices then return this collection of paths in a backward recursive manner
-	private LinkedList<LinkedList<String>> dfs(Vertex<Shape> u,float pathValue,float threshold){
-		//a variable to hold the result
-		LinkedList<LinkedList<String>> result=new LinkedList<LinkedList<String>>();
-		//check if we have a a valid path
-		if(pathValue>threshold) {
-			//add the current vertex to the path
-			LinkedList<String> temp=new LinkedList<String>();
-			temp.add(u.getKey());
-			//add this as a valid path (parents will be added in the previous recursive calls)
-			result.add(temp);
+	/*
+	 * Same as traverseFrom(key, threshold), with the paths built by several threads.
+	 *
+	 * Which path reaches a vertex depends on the order in which the depth first search
+	 * visits the vertices, so the search itself stays sequential: it only records, for
+	 * each vertex it reaches, its parent and its path value, in visiting order.  Building
+	 * the paths, which is most of the work for deep graphs, is then split over the common
+	 * fork-join pool by ranges of that order.  The result is the same list as the one of
+	 * traverseFrom(), in the same order.
+	 */
+	public LinkedList<LinkedList<String>> traverseFromParallel(String key, float threshold)
+	{
+		Vertex<Shape> start = this.vertexMap.get(key);
+		//make sure we are using a valid vertex
+		if(start==null||start.element==null)
+			return new LinkedList<>();
+		TraversalContext context = contexts.get();
+		if(context.busy)
+			context = new TraversalContext();
+		PathTask task;
+		context.begin(vertexIds.size());
+		try {
+			task = pathTree(start, threshold, context);
+		} finally {
+			context.busy = false;
 		}
-		//set the current vertex as visited
-		u.setVisited(true);
-		for(int i=0;i<u.adjList.size();i++){
-			//get the neighboring vertex
-			Vertex<Shape> v=u.adjList.get(i).endVertex;
-			//if not visited, visit it
-			if(v.getVisited()==false){
-				//get any possible valid paths starting from the neighboring
-				//vertices with (pathValue = current path Value + area of the neighboring vertex)
-				LinkedList<LinkedList<String>> localResult=dfs(v,pathValue+v.element.getArea(),threshold);
-				//we can add the current node to the local paths and still get valid paths !
-				//in other words, we are building the valid paths from the end to the start
-				for (LinkedList<String> item: localResult)
-					item.addFirst(u.getKey());
-				result.addAll(localResult);
+		return task.to<=PathTask.SEQUENTIAL_SIZE ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+	}
+
+	/*
+	 * Run traverseFrom(key, threshold) for each of the keys, on several threads at once.
+	 * Return the paths of each key, in the order of the keys.  The graph must not be
+	 * modified while this runs.
+	 */
+	public LinkedHashMap<String, LinkedList<LinkedList<String>>> traverseFromAll(Collection<String> keys, float threshold)
+	{
+		ConcurrentHashMap<String, LinkedList<LinkedList<String>>> paths = new ConcurrentHashMap<>();
+		keys.parallelStream().distinct().forEach(key -> paths.put(key, traverseFrom(key, threshold)));
+		LinkedHashMap<String, LinkedList<LinkedList<String>>> result = new LinkedHashMap<>();
+		for(String key : keys)
+			result.put(key, paths.get(key));
+		return result;
+	}
+
+	//the depth first search of traverseFromParallel(): the tree of the paths, in visiting order
+	private PathTask pathTree(Vertex<Shape> start, float threshold, TraversalContext context)
+	{
+		ArrayList<String> keys = new ArrayList<String>();
+		int[] parents = new int[16];
+		float[] pathValues = new float[16];
+		//the visiting numbers of the vertices on the current path, and their edges left to follow
+		int[] path = new int[16];
+		ArrayList<Iterator<Edge>> edges = context.edges;
+
+		keys.add(start.getKey());
+		parents[0] = -1;
+		pathValues[0] = start.element.getArea();
+		path[0] = 0;
+		edges.add(start.adjList.iterator());
+		context.visit(vertexIds.get(start.getKey()));
+		while(!edges.isEmpty()){
+			int top = edges.size()-1;
+			Iterator<Edge> it = edges.get(top);
+			if(!it.hasNext()){
+				edges.remove(top);
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			Vertex<Shape> v = it.next().endVertex;
+			if(context.visit(vertexIds.get(v.getKey()))){
+				int n = keys.size();
+				if(n==parents.length){
+					parents = Arrays.copyOf(parents, n*2);
+					pathValues = Arrays.copyOf(pathValues, n*2);
+				}
+				if(top+1==path.length)
+					path = Arrays.copyOf(path, path.length*2);
+				keys.add(v.getKey());
+				parents[n] = path[top];
+				pathValues[n] = pathValues[path[top]]+areaOf(v);
+				path[top+1] = n;
+				edges.add(v.adjList.iterator());
 			}
 		}
-		//return the resulting list
-		return result;
+		return new PathTask(keys.toArray(new String[keys.size()]), parents, pathValues, threshold, 0, keys.size());
+	}
+
+	//the depth first search of traverseFrom(), from the valid vertex start
+	private void dfs(Vertex<Shape> start, float threshold, PathVisitor visitor, TraversalContext context)
+	{
+		//the path so far, and for each vertex on it the edges left to follow and the path value
+		ArrayList<String> path = context.path;
+		ArrayList<Iterator<Edge>> edges = context.edges;
+		float[] pathValues = context.pathValues;
+
+		path.add(start.getKey());
+		edges.add(start.adjList.iterator());
+		pathValues[0] = start.element.getArea();
+		context.visit(vertexIds.get(start.getKey()));
+		if(pathValues[0]>threshold)
+			visitor.visitPath(context.pathView);
+		while(!edges.isEmpty()){
+			int top = edges.size()-1;
+			Iterator<Edge> it = edges.get(top);
+			if(!it.hasNext()){
+				//done with this vertex: back to its parent
+				edges.remove(top);
+				path.remove(top);
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			Vertex<Shape> v = it.next().endVertex;
+			//if not visited, visit it with (pathValue = current path Value + area of the neighboring vertex)
+			if(context.visit(vertexIds.get(v.getKey()))){
+				if(top+1==pathValues.length)
+					pathValues = context.pathValues = Arrays.copyOf(pathValues, pathValues.length*2);
+				pathValues[top+1] = pathValues[top]+areaOf(v);
+				path.add(v.getKey());
+				edges.add(v.adjList.iterator());
+				if(pathValues[top+1]>threshold)
+					visitor.visitPath(context.pathView);
+			}
+		}
+	}
+
+	//the area of a vertex reached by a traversal, which must have a shape
+	private static float areaOf(Vertex<Shape> v)
+	{
+		if(v.element==null)
+			throw new NullPointerException("Vertex "+v.getKey()+" has no shape");
+		return v.element.getArea();
+	}
+
+	/*
+	 *  Builds the paths of the vertices with visiting numbers from..to-1 whose path
+	 *  value is above the threshold, by following the parents up to the start vertex.
+	 *  Large ranges are split in halves that run as separate fork-join tasks, and their
+	 *  lists are joined in order.
+	 */
+	private static class PathTask extends RecursiveTask<LinkedList<LinkedList<String>>> {
+		private static final long serialVersionUID = 1L;
+
+		// ranges up to this many vertices are done by a single task
+		static final int SEQUENTIAL_SIZE = 1024;
+
+		private final String[] keys;
+		private final int[] parents;
+		private final float[] pathValues;
+		private final float threshold;
+		private final int from;
+		private final int to;
+
+		PathTask(String[] keys, int[] parents, float[] pathValues, float threshold, int from, int to) {
+			this.keys = keys;
+			this.parents = parents;
+			this.pathValues = pathValues;
+			this.threshold = threshold;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected LinkedList<LinkedList<String>> compute() {
+			if(to-from<=SEQUENTIAL_SIZE){
+				LinkedList<LinkedList<String>> result = new LinkedList<LinkedList<String>>();
+				for(int i=from;i<to;i++){
+					if(pathValues[i]>threshold){
+						LinkedList<String> path = new LinkedList<String>();
+						for(int u=i;u>=0;u=parents[u])
+							path.addFirst(keys[u]);
+						result.add(path);
+					}
+				}
+				return result;
+			}
+			int middle = (from+to)>>>1;
+			PathTask left = new PathTask(keys, parents, pathValues, threshold, from, middle);
+			left.fork();
+			LinkedList<LinkedList<String>> right = new PathTask(keys, parents, pathValues, threshold, middle, to).compute();
+			LinkedList<LinkedList<String>> result = left.join();
+			result.addAll(right);
+			return result;
+		}
+	}
+
+	/*
+	 *  State of one traversal at a time: which vertices it has visited, and its stack.
+	 *  A vertex is visited when its stamp (indexed by the id of its key in the graph) equals the epoch of the
+	 *  current traversal, so starting a new traversal just increments the epoch instead
+	 *  of clearing a flag on every vertex of the graph.  The buffers are kept from one
+	 *  traversal to the next.  A context must not be used by two threads at once.
+	 */
+	public static class TraversalContext {
+		private int[] stamps = new int[0];
+		private int epoch;
+		private boolean busy;
+		private final ArrayList<String> path = new ArrayList<String>();
+		private final List<String> pathView = Collections.unmodifiableList(path);
+		private final ArrayList<Iterator<Edge>> edges = new ArrayList<Iterator<Edge>>();
+		private float[] pathValues = new float[16];
+
+		public TraversalContext() {
+		}
+
+		// Start a traversal of a graph whose vertex ids are below idCount.
+
+		private void begin(int idCount) {
+			busy = true;
+			path.clear();
+			edges.clear();
+			if(stamps.length<idCount)
+				stamps = new int[Math.max(idCount, stamps.length*2)];
+			if(++epoch==0){
+				//after 2^32 traversals the old stamps could look current again
+				Arrays.fill(stamps, 0);
+				epoch = 1;
+			}
+		}
+
+		// Mark the vertex as visited; return false if it already was.
+
+		private boolean visit(int id) {
+			if(stamps[id]==epoch)
+				return false;
+			stamps[id] = epoch;
+			return true;
+		}
 	}
 }
 
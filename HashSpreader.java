@@ -0,0 +1,35 @@
+package a4q1;
+
+/*
+ *  Turns the hashCode() of a key into the hash that MyHashTable stores and uses to pick
+ *  the key's home bucket.  A good spreader makes every bit of the hash code count, so
+ *  that keys whose hash codes only differ in their high bits (or follow some regular
+ *  pattern) do not pile up in neighbouring buckets.
+ */
+interface HashSpreader {
+
+    int spread(int hashCode);
+
+    // hashCode() as it is: the original behaviour of MyHashTable
+    HashSpreader IDENTITY = h -> h;
+
+    // folds the high half into the low half, like java.util.HashMap
+    HashSpreader XOR_SHIFT = h -> h ^ (h >>> 16);
+
+    // finalizer of MurmurHash3: every input bit affects every output bit
+    HashSpreader MURMUR3 = h -> {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    };
+
+    /*
+     * MURMUR3 applied to the hash code mixed with a seed.  Keys crafted to collide
+     * under one seed are scattered under another.
+     */
+    static HashSpreader seeded(int seed) {
+        return h -> MURMUR3.spread(h ^ seed);
+    }
+}
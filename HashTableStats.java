@@ -0,0 +1,198 @@
+package a4q1;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ *  Snapshot of the shape and the activity of a MyHashTable, returned by stats().
+ *
+ *  The probe length of an entry is how many buckets it sits past its home bucket; the
+ *  histogram counts the entries for each probe length, apart from the entries moved to
+ *  the overflow tree after a run of collisions.  The lookup counters are only
+ *  kept while MyHashTable.setMetricsEnabled(true) is in effect.
+ */
+class HashTableStats {
+
+    private final int size;
+    private final int numBuckets;
+    private final int[] probeHistogram;
+    private final int treeifiedCount;
+    private final long rehashCount;
+    private final long rehashNanos;
+    private final long lookupCount;
+    private final long probeCount;
+    private final long equalsCount;
+
+    HashTableStats(int size, int numBuckets, int[] probeHistogram, int treeifiedCount, long rehashCount,
+                   long rehashNanos, long lookupCount, long probeCount, long equalsCount) {
+        this.size = size;
+        this.numBuckets = numBuckets;
+        this.probeHistogram = probeHistogram;
+        this.treeifiedCount = treeifiedCount;
+        this.rehashCount = rehashCount;
+        this.rehashNanos = rehashNanos;
+        this.lookupCount = lookupCount;
+        this.probeCount = probeCount;
+        this.equalsCount = equalsCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+    public double getLoadFactor() {
+        return (double) size / numBuckets;
+    }
+
+    /*
+     * probeHistogram[d] is the number of entries stored d buckets past their home bucket.
+     */
+    public int[] getProbeHistogram() {
+        return probeHistogram.clone();
+    }
+
+    public int getMaxProbeLength() {
+        return probeHistogram.length - 1;
+    }
+
+    public double getAverageProbeLength() {
+        long total = 0;
+        long entries = 0;
+        for (int d = 0; d < probeHistogram.length; d++) {
+            total += (long) d * probeHistogram[d];
+            entries += probeHistogram[d];
+        }
+        return entries == 0 ? 0 : (double) total / entries;
+    }
+
+    /*
+     * Number of entries kept in the overflow tree rather than in the buckets.
+     */
+    public int getTreeifiedCount() {
+        return treeifiedCount;
+    }
+
+    public long getRehashCount() {
+        return rehashCount;
+    }
+
+    /*
+     * Time spent moving entries to new buckets, over all the rehashes.
+     */
+    public long getRehashNanos() {
+        return rehashNanos;
+    }
+
+    public long getLookupCount() {
+        return lookupCount;
+    }
+
+    /*
+     * Average number of buckets examined per lookup.
+     */
+    public double getAverageProbesPerLookup() {
+        return lookupCount == 0 ? 0 : (double) probeCount / lookupCount;
+    }
+
+    /*
+     * Average number of equals() calls per lookup; the cached hashes keep it close to 1
+     * for keys that are found and close to 0 for the others.
+     */
+    public double getAverageEqualsPerLookup() {
+        return lookupCount == 0 ? 0 : (double) equalsCount / lookupCount;
+    }
+
+    /*
+     * Record this snapshot as a JFR event, if a recording is asking for it.
+     */
+    public void commitEvent() {
+        StatsEvent event = new StatsEvent();
+        if (!event.isEnabled())
+            return;
+        event.size = size;
+        event.numBuckets = numBuckets;
+        event.maxProbeLength = getMaxProbeLength();
+        event.treeifiedCount = treeifiedCount;
+        event.averageProbeLength = getAverageProbeLength();
+        event.averageProbesPerLookup = getAverageProbesPerLookup();
+        event.rehashCount = rehashCount;
+        event.commit();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(size).append(" entries in ").append(numBuckets).append(" buckets (load ")
+                .append(String.format("%.3f", getLoadFactor())).append(")\n");
+        for (int d = 0; d < probeHistogram.length; d++) {
+            if (probeHistogram[d] != 0)
+                sb.append("  probe length ").append(d).append(": ").append(probeHistogram[d]).append(" entries\n");
+        }
+        sb.append("max probe length ").append(getMaxProbeLength())
+                .append(", average ").append(String.format("%.3f", getAverageProbeLength())).append('\n');
+        if (treeifiedCount != 0)
+            sb.append(treeifiedCount).append(" entries in the overflow tree\n");
+        sb.append(rehashCount).append(" rehashes in ").append(rehashNanos / 1000000).append(" ms\n");
+        sb.append(lookupCount).append(" lookups, ")
+                .append(String.format("%.3f", getAverageProbesPerLookup())).append(" probes and ")
+                .append(String.format("%.3f", getAverageEqualsPerLookup())).append(" equals() per lookup");
+        return sb.toString();
+    }
+
+    /*
+     *  JFR event committed for every rehash (for an incremental one, when it starts).
+     */
+    @Name("a4q1.HashTableRehash")
+    @Label("Hash Table Rehash")
+    @Category("Data Structures")
+    static class RehashEvent extends Event {
+        @Label("Old Buckets")
+        int oldBuckets;
+
+        @Label("New Buckets")
+        int newBuckets;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Incremental")
+        boolean incremental;
+    }
+
+    /*
+     *  JFR event with the contents of a stats snapshot.
+     */
+    @Name("a4q1.HashTableStats")
+    @Label("Hash Table Statistics")
+    @Category("Data Structures")
+    @Description("Probe lengths and lookup costs of a hash table")
+    static class StatsEvent extends Event {
+        @Label("Entries")
+        int size;
+
+        @Label("Buckets")
+        int numBuckets;
+
+        @Label("Max Probe Length")
+        int maxProbeLength;
+
+        @Label("Average Probe Length")
+        double averageProbeLength;
+
+        @Label("Entries in Overflow Tree")
+        int treeifiedCount;
+
+        @Label("Average Probes per Lookup")
+        double averageProbesPerLookup;
+
+        @Label("Rehashes")
+        long rehashCount;
+    }
+}
@@ -0,0 +1,471 @@
+package a4q1;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  Bounded cache on top of MyHashTable.
+ *
+ *  The hash table maps each key to the number of a node, and the nodes are kept in
+ *  parallel arrays (key, value, weight, timestamps, links).  The links thread every
+ *  node into one of three intrusive doubly linked lists, eldest first:
+ *
+ *   - LRU keeps all the nodes in the PROBATION list and evicts its eldest node.
+ *   - TINY_LFU (W-TinyLFU) puts new nodes in a small WINDOW list.  Nodes leaving the
+ *     window enter the PROBATION list, and a node accessed again while in probation is
+ *     promoted to the PROTECTED list.  When the cache is full, the newest node of the
+ *     probation list is only admitted if a frequency sketch has seen its key more often
+ *     than the key of the eldest one; otherwise it is the one evicted.
+ *
+ *  A hit is a hash table lookup and a few array writes: nothing is allocated, and node
+ *  numbers are boxed once per node and reused.  Expired entries are dropped when they
+ *  are looked up, or by cleanUp().  This class is not thread-safe.
+ */
+class MyCacheTable<K, V> {
+
+    enum EvictionPolicy { LRU, TINY_LFU }
+
+    /*
+     *  Gives the weight of an entry, counted against the maximum weight of the cache.
+     */
+    interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    // the lists, whose sentinel nodes are numbered like the lists themselves
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final int FIRST_NODE = 3;
+
+    /*
+     * Share of the maximum weight given to the window, and of the rest to the protected list.
+     */
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final EvictionPolicy policy;
+    private final Weigher<? super K, ? super V> weigher;
+    private final FrequencySketch sketch;
+
+    private long expireAfterWriteNanos = 0;
+    private long expireAfterAccessNanos = 0;
+
+    private final MyHashTable<K, Integer> index;
+
+    // the nodes
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int[] weights;
+    private long[] writeTimes;
+    private long[] accessTimes;
+    private int[] prev;
+    private int[] next;
+    private byte[] list;
+    private Integer[] nodeIds;
+    private int nextUnused = FIRST_NODE;
+    private int freeHead = -1;
+
+    private final long[] listWeight = new long[3];
+    private long totalWeight = 0;
+
+    // statistics
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+	/*
+	 * Constructor for a cache of at most maximumSize entries, with W-TinyLFU eviction.
+	 */
+    MyCacheTable(long maximumSize) {
+        this(maximumSize, EvictionPolicy.TINY_LFU, null);
+    }
+
+    /*
+     * Constructor for a cache whose entries weigh at most maximumWeight altogether.  If
+     * weigher is null, every entry weighs 1.
+     */
+    MyCacheTable(long maximumWeight, EvictionPolicy policy, Weigher<? super K, ? super V> weigher) {
+        //make sure that the maximum is valid
+        if (maximumWeight <= 0) {
+            System.out.println("Cannot create a cache with no room for entries");
+            maximumWeight = 1;
+        }
+        this.maximumWeight = maximumWeight;
+        this.policy = policy;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_SHARE));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_SHARE);
+        //size everything for the expected number of entries, the node arrays grow if needed
+        int expected = (int) Math.min(maximumWeight, 1 << 20);
+        this.sketch = policy == EvictionPolicy.TINY_LFU ? new FrequencySketch(expected) : null;
+        this.index = new MyHashTable<K, Integer>(Math.max(16, (int) (expected / 0.75) + 1));
+        allocateNodes(FIRST_NODE + Math.min(expected, 1 << 10));
+        clearLists();
+    }
+
+    /*
+     * Entries expire once this long has passed since they were last written (0 to disable).
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /*
+     * Entries expire once this long has passed since they were last read or written
+     * (0 to disable).
+     */
+    public void setExpireAfterAccess(long duration, TimeUnit unit) {
+        expireAfterAccessNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * return the number of entries in the cache.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * Total weight of the entries in the cache.
+     */
+    public long weightedSize() {
+        return totalWeight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /*
+     * Number of entries evicted because the cache was full or because they expired.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Retrieves the value cached for a key, or null if it is not cached or has expired.
+     */
+    public V get(K key) {
+        Integer id = index.get(key);
+        if (id == null) {
+            missCount++;
+            return null;
+        }
+        int node = id;
+        long now = expiring() ? System.nanoTime() : 0;
+        if (expiring() && isExpired(node, now)) {
+            evict(node);
+            missCount++;
+            return null;
+        }
+        onAccess(node, now);
+        hitCount++;
+        return value(node);
+    }
+
+    /*
+     * Checks if a key is cached, without counting it as an access.
+     */
+    public boolean containsKey(K key) {
+        Integer id = index.get(key);
+        return id != null && !(expiring() && isExpired(id, System.nanoTime()));
+    }
+
+    /**
+     * Caches a key-value pair, evicting other entries if the cache becomes too heavy.
+     * Return the previous value cached for the key, or null.
+     */
+    public V put(K key, V value) {
+        //make sure that the key and the value are valid
+        if (key == null || value == null) {
+            System.out.println("Inserting a null key or value into the cache!!");
+            return null;
+        }
+        long now = expiring() ? System.nanoTime() : 0;
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+
+        Integer id = index.get(key);
+        if (id != null && expiring() && isExpired(id, now)) {
+            evict(id);
+            id = null;
+        }
+        if (id != null) {
+            //replace the value in place
+            int node = id;
+            V old = value(node);
+            values[node] = value;
+            listWeight[list[node]] += weight - weights[node];
+            totalWeight += weight - weights[node];
+            weights[node] = weight;
+            writeTimes[node] = now;
+            onAccess(node, now);
+            evictIfNeeded();
+            return old;
+        }
+
+        int node = allocateNode();
+        keys[node] = key;
+        values[node] = value;
+        hashes[node] = key.hashCode();
+        weights[node] = weight;
+        writeTimes[node] = now;
+        accessTimes[node] = now;
+        index.put(key, nodeIds[node]);
+        if (sketch != null)
+            sketch.increment(hashes[node]);
+        link(node, policy == EvictionPolicy.TINY_LFU ? WINDOW : PROBATION);
+        evictIfNeeded();
+        return null;
+    }
+
+    /**
+     * Removes a key from the cache.  Return the value that was cached for it, or null.
+     */
+    public V remove(K key) {
+        Integer id = index.get(key);
+        if (id == null)
+            return null;
+        V ret = value(id);
+        discard(id);
+        return ret;
+    }
+
+    /**
+     * Removes all the entries from the cache.  The statistics are kept.
+     */
+    public void clear() {
+        index.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        nextUnused = FIRST_NODE;
+        freeHead = -1;
+        Arrays.fill(listWeight, 0);
+        totalWeight = 0;
+        clearLists();
+    }
+
+    /*
+     * Remove all the expired entries now, rather than when they are looked up.
+     */
+    public void cleanUp() {
+        if (!expiring())
+            return;
+        long now = System.nanoTime();
+        for (byte l = WINDOW; l <= PROTECTED; l++) {
+            int node = next[l];
+            while (node != l) {
+                int following = next[node];
+                if (isExpired(node, now))
+                    evict(node);
+                node = following;
+            }
+        }
+    }
+
+    //  helper methods
+
+    private boolean expiring() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    private boolean isExpired(int node, long now) {
+        return (expireAfterWriteNanos > 0 && now - writeTimes[node] >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - accessTimes[node] >= expireAfterAccessNanos);
+    }
+
+    /*
+     * Record a hit on a node: update the sketch and move the node in its lists.
+     */
+    private void onAccess(int node, long now) {
+        accessTimes[node] = now;
+        if (policy == EvictionPolicy.LRU) {
+            moveTo(node, PROBATION);
+            return;
+        }
+        sketch.increment(hashes[node]);
+        if (list[node] == PROBATION) {
+            //a second access: promote, and demote the eldest protected nodes if needed
+            moveTo(node, PROTECTED);
+            while (listWeight[PROTECTED] > protectedMaximum && next[PROTECTED] != node)
+                moveTo(next[PROTECTED], PROBATION);
+        } else {
+            moveTo(node, list[node]);
+        }
+    }
+
+    /*
+     * Evict entries until the cache is within its maximum weight.
+     */
+    private void evictIfNeeded() {
+        if (policy == EvictionPolicy.LRU) {
+            while (totalWeight > maximumWeight)
+                evict(next[PROBATION]);
+            return;
+        }
+        //nodes leaving the window become candidates for admission into the main lists
+        while (listWeight[WINDOW] > windowMaximum)
+            moveTo(next[WINDOW], PROBATION);
+        while (totalWeight > maximumWeight) {
+            int victim = next[PROBATION];
+            int candidate = prev[PROBATION];
+            if (victim == PROBATION) {
+                //nothing in probation, take the eldest of the other lists
+                evict(next[PROTECTED] != PROTECTED ? next[PROTECTED] : next[WINDOW]);
+            } else if (candidate != victim && sketch.frequency(hashes[candidate]) > sketch.frequency(hashes[victim])) {
+                evict(victim);
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void evict(int node) {
+        discard(node);
+        evictionCount++;
+    }
+
+    private void discard(int node) {
+        index.remove(key(node));
+        unlink(node);
+        keys[node] = null;
+        values[node] = null;
+        //the node goes on the free list, threaded through next[]
+        next[node] = freeHead;
+        freeHead = node;
+    }
+
+    private void clearLists() {
+        for (byte l = WINDOW; l <= PROTECTED; l++) {
+            next[l] = l;
+            prev[l] = l;
+        }
+    }
+
+    /*
+     * Append a node at the newest end of a list.
+     */
+    private void link(int node, byte l) {
+        int last = prev[l];
+        next[last] = node;
+        prev[node] = last;
+        next[node] = l;
+        prev[l] = node;
+        list[node] = l;
+        listWeight[l] += weights[node];
+        totalWeight += weights[node];
+    }
+
+    private void unlink(int node) {
+        next[prev[node]] = next[node];
+        prev[next[node]] = prev[node];
+        listWeight[list[node]] -= weights[node];
+        totalWeight -= weights[node];
+    }
+
+    private void moveTo(int node, byte l) {
+        unlink(node);
+        link(node, l);
+    }
+
+    private int allocateNode() {
+        if (freeHead >= 0) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (nextUnused == keys.length)
+            allocateNodes(keys.length * 2);
+        int node = nextUnused++;
+        if (nodeIds[node] == null)
+            nodeIds[node] = node;
+        return node;
+    }
+
+    private void allocateNodes(int capacity) {
+        keys = keys == null ? new Object[capacity] : Arrays.copyOf(keys, capacity);
+        values = values == null ? new Object[capacity] : Arrays.copyOf(values, capacity);
+        hashes = hashes == null ? new int[capacity] : Arrays.copyOf(hashes, capacity);
+        weights = weights == null ? new int[capacity] : Arrays.copyOf(weights, capacity);
+        writeTimes = writeTimes == null ? new long[capacity] : Arrays.copyOf(writeTimes, capacity);
+        accessTimes = accessTimes == null ? new long[capacity] : Arrays.copyOf(accessTimes, capacity);
+        prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        list = list == null ? new byte[capacity] : Arrays.copyOf(list, capacity);
+        nodeIds = nodeIds == null ? new Integer[capacity] : Arrays.copyOf(nodeIds, capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int node) {
+        return (K) keys[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int node) {
+        return (V) values[node];
+    }
+
+    /*
+     *  Count-min sketch of 4-bit counters estimating how often each key hash was seen.
+     *  All the counters are halved every sampleSize increments, so that old popularity
+     *  fades away.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(int expectedEntries) {
+            //about 4 counters per entry, 16 counters per long
+            int counters = Integer.highestOneBit(Math.max(64, expectedEntries) * 4 - 1) << 1;
+            table = new long[counters >>> 4];
+            counterMask = counters - 1;
+            sampleSize = 10 * Math.max(64, expectedEntries);
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counterIndex(hash, i);
+                frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                int counter = counterIndex(hash, i);
+                int shift = (counter & 15) << 2;
+                if (((table[counter >>> 4] >>> shift) & 15) != 15)
+                    table[counter >>> 4] += 1L << shift;
+            }
+            if (++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++)
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                additions /= 2;
+            }
+        }
+
+        private int counterIndex(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (h ^ (h >>> 32)) & counterMask;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package a4q1;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+ *  Thread-safe hash table with the same put/get/remove/containsKey API as MyHashTable.
+ *
+ *  The buckets are split into independent segments, each guarded by its own lock, so
+ *  threads updating keys of different segments never wait for each other.  Reads take
+ *  no lock at all: the chains are made of nodes whose key and next pointer never change,
+ *  bucket heads are published through an AtomicReferenceArray and values are volatile,
+ *  so a reader always sees a complete chain, either before or after a concurrent update.
+ *  Each segment resizes on its own, under its own lock, while the others keep serving
+ *  reads and writes.
+ */
+class MyConcurrentHashTable<K, V> {
+
+    /**
+     * Threshold load factor for resizing a segment.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Default number of segments, i.e. of updates that can run in parallel.
+     */
+    private static final int DEFAULT_CONCURRENCY = 64;
+
+    private final Segment<K, V>[] segments;
+
+    /*
+     * The segment of a key is given by the top bits of its hash, the bucket inside the
+     * segment by its low bits.
+     */
+    private final int segmentShift;
+
+    /*
+     * Number of entries, striped across cells so that counting does not become a
+     * contention point of its own.
+     */
+    private final LongAdder entryCount = new LongAdder();
+
+	/*
+	 * Constructor.
+	 *
+	 * numBuckets is the initial number of buckets used by this hash table
+	 */
+    MyConcurrentHashTable(int numBuckets) {
+        this(numBuckets, DEFAULT_CONCURRENCY);
+    }
+
+    /*
+     * concurrencyLevel is the number of threads expected to update the table at the
+     * same time; it is rounded up to a power of two.
+     */
+    MyConcurrentHashTable(int numBuckets, int concurrencyLevel) {
+        //make sure that the arguments are valid
+        if (numBuckets <= 0 || concurrencyLevel <= 0) {
+            System.out.println("Cannot create a hashtable with zero buckets or segments");
+            numBuckets = Math.max(numBuckets, 1);
+            concurrencyLevel = Math.max(concurrencyLevel, 1);
+        }
+        int numSegments = powerOfTwoAtLeast(concurrencyLevel);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(numSegments);
+        //spread the initial buckets over the segments
+        int segmentBuckets = powerOfTwoAtLeast(Math.max(2, (numBuckets + numSegments - 1) / numSegments));
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<K, V>[] segments = (Segment<K, V>[]) new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++)
+            segments[i] = new Segment<K, V>(segmentBuckets);
+        this.segments = segments;
+    }
+
+    private static int powerOfTwoAtLeast(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /*
+     * Mix the high bits of the hash code into the low ones, since both the segment and
+     * the bucket index are taken from a few bits only.
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        //with a single segment the shift is 32, which Java would treat as 0
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Checking if the hash table is empty.
+     */
+    public boolean isEmpty() {
+        return entryCount.sum() == 0;
+    }
+
+    /**
+     * return the number of entries in the hash table.  While other threads are updating
+     * the table this is only an estimate.
+     */
+    public int size() {
+        return (int) Math.min(entryCount.sum(), Integer.MAX_VALUE);
+    }
+
+    /*
+     * Total number of buckets of all the segments.
+     */
+    public int getNumBuckets() {
+        int buckets = 0;
+        for (Segment<K, V> segment : segments)
+            buckets += segment.table.length();
+        return buckets;
+    }
+
+    /**
+     * Retrieves a value associated with some given key in the hash table.
+     * Returns null if the key could not be found in the hash table.  Never blocks.
+     */
+    public V get(K key) {
+        //make sure that the key is valid
+        if (key == null) {
+            System.out.println("Trying to access an element with a null key!!");
+            return null;
+        }
+        int hash = spread(key.hashCode());
+        Node<K, V> node = segmentFor(hash).find(key, hash);
+        return node == null ? null : node.value;
+    }
+
+    /*
+     * Checks if the hash table contains the given key.  Never blocks.
+     */
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Adds a key-value pair to the hash table.  If there was a previous value for the
+     * given key, then return it.  Otherwise return null.
+     * <p>
+     * Values cannot be null, so that null can mean "absent" in compute() and merge().
+     */
+    public V put(K key, V value) {
+        if (!checkArguments(key, value))
+            return null;
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).put(key, hash, value, false, entryCount);
+    }
+
+    /**
+     * Adds the key-value pair only if the key is not in the table yet, atomically.
+     * Return the value already in the table, or null if the pair was added.
+     */
+    public V putIfAbsent(K key, V value) {
+        if (!checkArguments(key, value))
+            return null;
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).put(key, hash, value, true, entryCount);
+    }
+
+    /**
+     * Removes a key-value pair from the hash table.
+     * Return value associated with the provided key.   If the key is not found, return null.
+     */
+    public V remove(K key) {
+        //make sure that the key is valid
+        if (key == null) {
+            System.out.println("Trying to remove an element with a null key!!");
+            return null;
+        }
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).remove(key, hash, entryCount);
+    }
+
+    /**
+     * Atomically replace the value of a key with remapping(key, current value), where
+     * the current value is null if the key is absent.  A null result removes the key.
+     * Return the new value.
+     * <p>
+     * The function runs while the key's segment is locked, so it should be short and
+     * must not update this table.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        if (key == null) {
+            System.out.println("Trying to compute an element with a null key!!");
+            return null;
+        }
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).compute(key, hash, remapping, entryCount);
+    }
+
+    /**
+     * If the key is absent, atomically add it with the value mapping(key), unless that
+     * is null.  Return the value associated with the key afterwards.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mapping) {
+        if (key == null) {
+            System.out.println("Trying to compute an element with a null key!!");
+            return null;
+        }
+        int hash = spread(key.hashCode());
+        Segment<K, V> segment = segmentFor(hash);
+        //the common case, the key is there already, needs no lock
+        Node<K, V> node = segment.find(key, hash);
+        if (node != null)
+            return node.value;
+        return segment.compute(key, hash, (k, v) -> v != null ? v : mapping.apply(k), entryCount);
+    }
+
+    /**
+     * Atomically associate the key with 'value' if it is absent, or else with
+     * merging(current value, value).  A null result removes the key.  Return the new value.
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> merging) {
+        if (!checkArguments(key, value))
+            return null;
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).compute(key, hash, (k, v) -> v == null ? value : merging.apply(v, value), entryCount);
+    }
+
+    /**
+     * Removes all the entries from the hash table.  Each segment is emptied atomically,
+     * but entries added to a segment that is already cleared are kept.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments)
+            segment.clear(entryCount);
+    }
+
+	/*
+	 * return an ArrayList of the keys in the hashtable.  The list reflects every update
+	 * that completed before the call, and possibly some of those running concurrently.
+	 */
+    public ArrayList<K> keys() {
+        ArrayList<K> listKeys = new ArrayList<K>(size());
+        for (Segment<K, V> segment : segments) {
+            AtomicReferenceArray<Node<K, V>> table = segment.table;
+            for (int i = 0; i < table.length(); i++) {
+                for (Node<K, V> node = table.get(i); node != null; node = node.next)
+                    listKeys.add(node.key);
+            }
+        }
+        return listKeys;
+    }
+
+    /*
+     * return an ArrayList of the values in the hashtable, with the same guarantees as keys()
+     */
+    public ArrayList<V> values() {
+        ArrayList<V> listValues = new ArrayList<V>(size());
+        for (Segment<K, V> segment : segments) {
+            AtomicReferenceArray<Node<K, V>> table = segment.table;
+            for (int i = 0; i < table.length(); i++) {
+                for (Node<K, V> node = table.get(i); node != null; node = node.next)
+                    listValues.add(node.value);
+            }
+        }
+        return listValues;
+    }
+
+    private boolean checkArguments(K key, V value) {
+        if (key == null) {
+            System.out.println("Inserting a null key into the table!!");
+            return false;
+        }
+        if (value == null) {
+            System.out.println("Inserting a null value into the table!!");
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     *  An entry of a bucket chain.  Only the value can change after the node is
+     *  published; removing a node copies the nodes ahead of it instead.
+     */
+    static final class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        final Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /*
+     *  A segment: a small chained hash table that is updated under its own lock.
+     */
+    static final class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        //replaced as a whole by resize(), so readers keep a consistent table
+        volatile AtomicReferenceArray<Node<K, V>> table;
+        //number of entries in this segment, guarded by the lock
+        private int count;
+
+        Segment(int numBuckets) {
+            table = new AtomicReferenceArray<Node<K, V>>(numBuckets);
+        }
+
+        /*
+         * Lock-free lookup.
+         */
+        Node<K, V> find(Object key, int hash) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            for (Node<K, V> node = tab.get(hash & (tab.length() - 1)); node != null; node = node.next) {
+                if (node.hash == hash && node.key.equals(key))
+                    return node;
+            }
+            return null;
+        }
+
+        V put(K key, int hash, V value, boolean onlyIfAbsent, LongAdder entryCount) {
+            lock.lock();
+            try {
+                Node<K, V> node = find(key, hash);
+                if (node != null) {
+                    V old = node.value;
+                    if (!onlyIfAbsent)
+                        node.value = value;
+                    return old;
+                }
+                addNode(key, hash, value, entryCount);
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        V compute(K key, int hash, BiFunction<? super K, ? super V, ? extends V> remapping, LongAdder entryCount) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<K, V> node = tab.get(index);
+                while (node != null && !(node.hash == hash && node.key.equals(key)))
+                    node = node.next;
+                V old = node == null ? null : node.value;
+                V value = remapping.apply(key, old);
+                if (node != null && value != null) {
+                    node.value = value;
+                } else if (node != null) {
+                    unlink(tab, index, node, entryCount);
+                } else if (value != null) {
+                    addNode(key, hash, value, entryCount);
+                }
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /*
+         * Remove the key, and return the value it had (null if it was absent).
+         */
+        V remove(K key, int hash, LongAdder entryCount) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<K, V> node = tab.get(index);
+                while (node != null && !(node.hash == hash && node.key.equals(key)))
+                    node = node.next;
+                if (node == null)
+                    return null;
+                unlink(tab, index, node, entryCount);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear(LongAdder entryCount) {
+            lock.lock();
+            try {
+                table = new AtomicReferenceArray<Node<K, V>>(table.length());
+                entryCount.add(-count);
+                count = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /*
+         * Take the node out of its bucket by copying the nodes ahead of it, since the
+         * next pointers never change.  Called with the lock held.
+         */
+        private void unlink(AtomicReferenceArray<Node<K, V>> tab, int index, Node<K, V> node, LongAdder entryCount) {
+            Node<K, V> newFirst = node.next;
+            for (Node<K, V> p = tab.get(index); p != node; p = p.next)
+                newFirst = new Node<K, V>(p.hash, p.key, p.value, newFirst);
+            tab.set(index, newFirst);
+            count--;
+            entryCount.decrement();
+        }
+
+        /*
+         * Add a new node at the head of its bucket, resizing first if needed.  Called
+         * with the lock held.
+         */
+        private void addNode(K key, int hash, V value, LongAdder entryCount) {
+            if (count + 1 > table.length() * MAX_LOAD_FACTOR)
+                resize();
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            int index = hash & (tab.length() - 1);
+            tab.set(index, new Node<K, V>(hash, key, value, tab.get(index)));
+            count++;
+            entryCount.increment();
+        }
+
+        /*
+         * Double the number of buckets of this segment.  The new table is filled before it
+         * is published; readers still walking the old one see its unchanged chains.
+         */
+        private void resize() {
+            AtomicReferenceArray<Node<K, V>> oldTable = table;
+            int newLength = oldTable.length() * 2;
+            int mask = newLength - 1;
+            AtomicReferenceArray<Node<K, V>> newTable = new AtomicReferenceArray<Node<K, V>>(newLength);
+            for (int i = 0; i < oldTable.length(); i++) {
+                Node<K, V> first = oldTable.get(i);
+                if (first == null)
+                    continue;
+                //the longest tail whose nodes all go to the same new bucket is reused as is
+                Node<K, V> lastRun = first;
+                int lastIndex = first.hash & mask;
+                for (Node<K, V> p = first.next; p != null; p = p.next) {
+                    int index = p.hash & mask;
+                    if (index != lastIndex) {
+                        lastIndex = index;
+                        lastRun = p;
+                    }
+                }
+                newTable.set(lastIndex, lastRun);
+                //the nodes ahead of it are copied
+                for (Node<K, V> p = first; p != lastRun; p = p.next) {
+                    int index = p.hash & mask;
+                    newTable.set(index, new Node<K, V>(p.hash, p.key, p.value, newTable.get(index)));
+                }
+            }
+            table = newTable;
+        }
+    }
+}
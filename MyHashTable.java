@@ -0,0 +1,1672 @@
+//Student Name: Andree Kaba
+//McGill ID: 260493293
+package a4q1;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class MyHashTable<K, V> implements Iterable<MyHashTable<K, V>.HashEntry> {
+    /*
+     *   Number of entries in the HashTable.
+     */
+    private int entryCount = 0;
+
+    /*
+     * Number of buckets. The constructor sets this variable to its initial value,
+     * which eventually can get changed by invoking the rehash() method.
+     */
+    private int numBuckets;
+
+    /**
+     * Threshold load factor for rehashing.
+     */
+    private final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Threshold load factor for shrinking, after a remove().  The table never shrinks
+     * below the number of buckets it was created with.
+     */
+    private final double MIN_LOAD_FACTOR = MAX_LOAD_FACTOR / 4;
+
+    /**
+     * Number of old buckets moved into the new table by each put() or remove() while an
+     * incremental rehash is in progress.  With this step a migration always completes
+     * before the new table can reach MAX_LOAD_FACTOR.
+     */
+    private static final int MIGRATE_STEP = 8;
+
+    /**
+     * Longest probe sequence an entry with a Comparable key is placed at.  An entry that
+     * would go further is moved to the overflow tree instead, so that many keys with equal
+     * (or equally placed) hashes cannot turn lookups into long linear scans.
+     */
+    private static final int TREEIFY_THRESHOLD = 32;
+
+    /**
+     * Once the overflow tree is down to this many entries, they are put back in the buckets.
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The slot arrays are split into chunks of 2^CHUNK_SHIFT buckets, the unit that is
+     * copied when the table writes to slots it shares with a snapshot.
+     */
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /*
+     * Number of buckets the table was created with (lower bound for shrinking).
+     */
+    private int minBuckets;
+
+    /*
+     * When true, growing or shrinking the table does not move every entry at once:
+     * the entries stay in the old slot arrays and are migrated a few buckets at a
+     * time by later updates, while lookups consult both tables.
+     */
+    private boolean incrementalRehash = false;
+
+    /**
+     * Open-addressing storage: bucket i holds at most one entry, split across three
+     * parallel arrays.  The key slot of an empty bucket is null, and the hash slot caches
+     * the key's hash code so that probing can skip most equals() calls.
+     * <p>
+     * Entries are placed with Robin Hood linear probing: an entry that is further from
+     * its home bucket takes the place of one that is closer to its own.  This keeps every
+     * probe sequence short, so a lookup usually stays within one or two cache lines and no
+     * node object is allocated per entry.
+     * <p>
+     * Each array is a directory of chunks: bucket i is element i & CHUNK_MASK of chunk
+     * i >>> CHUNK_SHIFT.  All chunks hold CHUNK_SIZE buckets, except maybe the last one.
+     */
+    private Object[][] keySlots;
+    private Object[][] valueSlots;
+    private int[][] hashSlots;
+
+    /**
+     * Slot arrays being drained by an incremental rehash, or null when no rehash is in
+     * progress.  Old buckets below migrateIndex have been moved already, and a set bit in
+     * oldGone marks an entry that has been removed or moved ahead of the migration.  The
+     * old arrays themselves are never written to.
+     */
+    private Object[][] oldKeySlots;
+    private Object[][] oldValueSlots;
+    private int[][] oldHashSlots;
+    private long[] oldGone;
+    private int oldNumBuckets;
+    private int migrateIndex;
+
+    /*
+     * Number of structural changes (entries added, removed or moved), so that iterators
+     * can fail fast when the table changes under them.
+     */
+    private int modCount = 0;
+
+    /*
+     * Number of updates since the table was created; see getVersion().
+     */
+    private long version = 0;
+
+    /*
+     * Copy-on-write state for snapshots, which must never see their slots change.
+     * slotsShared is set while the chunk directories are shared with lastSnapshot: the
+     * next write leaves them to the snapshot and takes copies of the directories, still
+     * pointing to the same chunks.  chunkShared[c] is then set until the first write to
+     * chunk c, which copies that chunk only.  The old table of a rehash is never written
+     * to, apart from oldGone, which is copied on its first write after a snapshot.
+     */
+    private boolean slotsShared = false;
+    private boolean[] chunkShared;
+    private boolean oldGoneShared = false;
+    private Snapshot lastSnapshot;
+
+    /*
+     * Entries that did not fit within TREEIFY_THRESHOLD buckets of their home bucket,
+     * ordered by hash, then by key.  Null until first needed.
+     */
+    private TreeMap<Object, Object> overflow;
+
+    /*
+     * Turns the keys' hashCode() into the hashes stored in hashSlots: either the
+     * spreader given to the constructor, or a randomly seeded one.
+     */
+    private HashSpreader spreader;
+    private final HashSpreader defaultSpreader;
+
+    /*
+     * Rehash activity, and lookup costs while metricsEnabled is set.  See stats().
+     */
+    private boolean metricsEnabled = false;
+    private long rehashCount = 0;
+    private long rehashNanos = 0;
+    private long lookupCount = 0;
+    private long probeCount = 0;
+    private long equalsCount = 0;
+
+	/*
+	 * Constructor.
+	 *
+	 * numBuckets is the initial number of buckets used by this hash table
+	 */
+
+    MyHashTable(int numBuckets) {
+        this(numBuckets, HashSpreader.MURMUR3);
+    }
+
+    /*
+     * Constructor with a custom way of spreading the keys' hash codes over the buckets.
+     */
+    MyHashTable(int numBuckets, HashSpreader spreader) {
+        this.spreader = spreader;
+        this.defaultSpreader = spreader;
+        //make sure that numBuckets is valid
+        if(numBuckets<=0) {
+            System.out.println("Cannot create a hashtable with zero buckets");
+            return;
+        }
+        //create a table with "numBuckets" buckets
+        this.numBuckets=numBuckets;
+        this.minBuckets=numBuckets;
+        //initialize the (empty) slot arrays
+        allocateSlots(numBuckets);
+    }
+
+    /**
+     * The hash of a key, as stored in hashSlots.
+     */
+    private int hash(Object key) {
+        return spreader.spread(key.hashCode());
+    }
+
+    /**
+     * Given the hash of a key, return the home bucket for the key.
+     */
+    private int hashFunction(int hash) {
+
+        return hashFunction(hash, numBuckets);
+    }
+
+    /**
+     * Home bucket for a hash code in a table with the given number of buckets.
+     */
+    private int hashFunction(int hash, int buckets) {
+
+        //clear the sign bit: Math.abs(Integer.MIN_VALUE) is still negative
+        return (hash & 0x7fffffff) % buckets;
+    }
+
+    /**
+     * How many buckets the entry stored at 'slot' sits past its home bucket.
+     */
+    private int probeDistance(int hash, int slot) {
+        int distance = slot - hashFunction(hash);
+        return distance < 0 ? distance + numBuckets : distance;
+    }
+
+    /**
+     * Switch incremental rehashing on or off.  Turning it off completes any rehash
+     * that is still in progress.
+     */
+    public void setIncrementalRehash(boolean incremental) {
+        if (!incremental)
+            finishRehash();
+        this.incrementalRehash = incremental;
+    }
+
+    /**
+     * Switch to a hash spreader seeded with a random number, or back to the one given to
+     * the constructor.  With a secret seed, clients choosing the keys cannot predict which
+     * keys collide.  Every entry is moved to its new bucket.
+     */
+    public void setRandomizedHashing(boolean randomized) {
+        spreader = randomized ? HashSpreader.seeded(new SecureRandom().nextInt()) : defaultSpreader;
+        finishRehash();
+        rebuild(numBuckets, true);
+    }
+
+    /**
+     * Checking if the hash table is empty.
+     */
+    public boolean isEmpty() {
+        if (entryCount == 0)
+            return true;
+        else
+            return (false);
+    }
+
+    /**
+     * return the number of entries in the hash table.
+     */
+    public int size() {
+        return (entryCount);
+    }
+
+    /**
+     * Adds a key-value pair to the hash table. If the load factor goes above the
+     * MAX_LOAD_FACTOR, then call the rehash() method after inserting.
+     * <p>
+     * If there was a previous value for the given key in this hashtable, then return it.
+     * Otherwise return null.
+     */
+
+    public V put(K key, V value) {
+        //make sure that the key is valid, however, value can be null
+        if(key==null){
+            System.out.println("Inserting a null key into the table!!");
+            return null;
+        }
+        version++;
+        int hash = hash(key);
+
+        //check if we already have the element, in a single probe sequence
+        int slot = findSlot(key, hash);
+
+        //if we do, replace the value in place and return the old one
+        if (slot >= 0) {
+            V ret = slotValue(slot);
+            setSlotValue(slot, value);
+            return ret;
+        }
+
+        V ret = null;
+        int oldSlot = findOldSlot(key, hash);
+        if (oldSlot >= 0) {
+            //the key is still waiting in the old table: move it ahead of the migration
+            ret = oldSlotValue(oldSlot);
+            markOldGone(oldSlot);
+            placeEntry(key, value, hash);
+        } else if (inOverflow(key)) {
+            //the key is in the overflow tree, update it there
+            return overflowValue(overflow.put(key, value));
+        } else {
+            //otherwise insert it and increase the number of elements in the hash table
+            placeEntry(key, value, hash);
+            entryCount++;
+        }
+        migrate(MIGRATE_STEP);
+
+        // rehash if the load factor goes above the MAX_LOAD_FACTOR
+        if (((double)this.size()/(double)numBuckets) > this.MAX_LOAD_FACTOR)
+            resize(numBuckets * 2);
+
+        return ret;
+    }
+
+    /**
+     * Retrieves a value associated with some given key in the hash table.
+     * Returns null if the key could not be found in the hash table)
+     */
+    public V get(K key) {
+        //make sure that the key is valid
+        if(key==null){
+            System.out.println("Trying to access an element with a null key!!");
+            return null;
+        }
+
+        //search for the element in the hash table, then in the old table if we are rehashing
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        if (slot >= 0)
+            return slotValue(slot);
+        int oldSlot = findOldSlot(key, hash);
+        if (oldSlot >= 0)
+            return oldSlotValue(oldSlot);
+        //return the value of the element if it is in the overflow tree, null otherwise
+        if (!inOverflow(key))
+            return null;
+        else
+            return overflowValue(overflow.get(key));
+    }
+
+    /**
+     * Removes a key-value pair from the hash table.
+     * Return value associated with the provided key.   If the key is not found, return null.
+     */
+    public V remove(K key) {
+        //make sure that the key is valid
+        if(key==null){
+            System.out.println("Trying to remove an element with a null key!!");
+            return null;
+        }
+
+        //retrieve the element from the hash table
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        int oldSlot = slot >= 0 ? -1 : findOldSlot(key, hash);
+        if (slot < 0 && oldSlot < 0 && !inOverflow(key))
+            return null;
+        V ret;
+        if (slot >= 0) {
+            //return the value associated with the provided key and remove the key-value pair
+            ret = slotValue(slot);
+            deleteSlot(slot);
+        } else if (oldSlot >= 0) {
+            ret = oldSlotValue(oldSlot);
+            markOldGone(oldSlot);
+        } else {
+            modCount++;
+            ret = overflowValue(overflow.remove(key));
+        }
+
+        //decrease the number of elements in the hash table
+        entryCount--;
+        version++;
+        migrate(MIGRATE_STEP);
+        untreeify();
+
+        // shrink if the load factor drops far below the MAX_LOAD_FACTOR
+        if (oldKeySlots == null && numBuckets > minBuckets
+                && ((double)this.size()/(double)numBuckets) < this.MIN_LOAD_FACTOR)
+            resize(Math.max(numBuckets / 2, minBuckets));
+
+        return (ret);
+    }
+
+    /**
+     * Adds the key-value pairs keys[i] -> values[i] to the hash table.  The table is
+     * resized at most once, before the batch, to hold all the new keys, and the pairs are
+     * inserted in bucket order so that the table is swept from one end to the other.
+     * <p>
+     * Return the previous values, at the same positions as their keys (null if none).
+     */
+    public ArrayList<V> putAll(K[] keys, V[] values) {
+        return bulkPut(keys, values);
+    }
+
+    public ArrayList<V> putAll(Collection<? extends K> keys, Collection<? extends V> values) {
+        return bulkPut(keys.toArray(), values.toArray());
+    }
+
+    /**
+     * Retrieves the values associated with some given keys, in bucket order.
+     * Return the values at the same positions as their keys (null if not found).
+     */
+    public ArrayList<V> getAll(K[] keys) {
+        return bulkGet(keys);
+    }
+
+    public ArrayList<V> getAll(Collection<? extends K> keys) {
+        return bulkGet(keys.toArray());
+    }
+
+    /**
+     * Removes some given keys, in bucket order, and shrinks the table at most once,
+     * after the batch.  Return the removed values at the same positions as their keys
+     * (null if not found).
+     */
+    public ArrayList<V> removeAll(K[] keys) {
+        return bulkRemove(keys);
+    }
+
+    public ArrayList<V> removeAll(Collection<? extends K> keys) {
+        return bulkRemove(keys.toArray());
+    }
+
+    /*
+     * Switch the counting of lookup costs on or off.  It adds a few increments to every
+     * lookup, and also times the steps of incremental rehashes.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        this.metricsEnabled = enabled;
+    }
+
+    /*
+     * Reset the lookup counters.
+     */
+    public void resetMetrics() {
+        lookupCount = 0;
+        probeCount = 0;
+        equalsCount = 0;
+    }
+
+    /*
+     * Return a snapshot of the probe lengths, rehashes and lookup costs of the table.
+     * Building the probe-length histogram scans every bucket.
+     */
+    public HashTableStats stats() {
+        int[] histogram = new int[1];
+        for (int i = 0; i < numBuckets; i++) {
+            if (slot(keySlots, i) != null)
+                histogram = countProbe(histogram, probeDistance(slot(hashSlots, i), i));
+        }
+        for (int i = migrateIndex; i < oldNumBuckets; i++) {
+            if (isOldLive(i)) {
+                int distance = i - hashFunction(slot(oldHashSlots, i), oldNumBuckets);
+                histogram = countProbe(histogram, distance < 0 ? distance + oldNumBuckets : distance);
+            }
+        }
+        //trim the histogram to the longest probe length
+        int length = histogram.length;
+        while (length > 1 && histogram[length - 1] == 0)
+            length--;
+        return new HashTableStats(entryCount, numBuckets, Arrays.copyOf(histogram, length),
+                overflow == null ? 0 : overflow.size(), rehashCount, rehashNanos, lookupCount, probeCount, equalsCount);
+    }
+
+    private static int[] countProbe(int[] histogram, int distance) {
+        if (distance >= histogram.length)
+            histogram = Arrays.copyOf(histogram, Math.max(distance + 1, histogram.length * 2));
+        histogram[distance]++;
+        return histogram;
+    }
+
+    /*
+     *  This method is used for testing rehash().  Normally one would not provide such a method.
+     */
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+	/*
+	 * Returns an iterator for the hash table.
+	 */
+
+    //@Override
+    public HashIterator iterator() {
+        return new HashIterator();
+    }
+
+    /*
+     * Returns a splittable view of the entries, for (parallel) stream pipelines.
+     */
+    @Override
+    public Spliterator<HashEntry> spliterator() {
+        return new TableSpliterator<HashEntry>(HashEntry::new, Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /*
+     * Streams over the entries, keys and values of the hash table.  Call parallel()
+     * on the result to process them on several cores.
+     */
+    public Stream<HashEntry> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<K> keyStream() {
+        return StreamSupport.stream(new TableSpliterator<K>((k, v) -> k, Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    public Stream<V> valueStream() {
+        return StreamSupport.stream(new TableSpliterator<V>((k, v) -> v, 0), false);
+    }
+
+    /**
+     * Removes all the entries from the hash table, but keeps the number of buckets intact.
+     */
+    public void clear() {
+        modCount++;
+        version++;
+        dropOldTable();
+        overflow = null;
+        if (slotsShared) {
+            //the snapshot keeps the filled chunks
+            allocateSlots(numBuckets);
+        } else {
+            for (int c = 0; c < keySlots.length; c++) {
+                if (chunkShared[c]) {
+                    allocateChunk(c, keySlots[c].length);
+                } else {
+                    Arrays.fill(keySlots[c], null);
+                    Arrays.fill(valueSlots[c], null);
+                    Arrays.fill(hashSlots[c], 0);
+                }
+            }
+        }
+        entryCount = 0;
+    }
+
+    /**
+     * Returns an immutable view of the current entries, which later updates of the table
+     * do not affect.  Taking a snapshot is O(1), apart from copying the overflow tree:
+     * the snapshot shares the chunks of the slot arrays with the table, and a later update
+     * only copies the chunks it writes to (see slotsShared).  An incremental rehash in
+     * progress carries on, and the snapshot keeps both tables of it.
+     * <p>
+     * If the table has not been updated since the last snapshot, that snapshot is returned.
+     */
+    public Snapshot snapshot() {
+        if (lastSnapshot != null && lastSnapshot.version == version)
+            return lastSnapshot;
+        slotsShared = true;
+        oldGoneShared = oldGone != null;
+        lastSnapshot = new Snapshot();
+        return lastSnapshot;
+    }
+
+    /*
+     * Number of updates made to the table so far.  A snapshot with the same version
+     * still has the same contents as the table.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Create a new hash table that has twice the number of buckets.
+     */
+
+    public void rehash() {
+        //a rehash that is still in progress has to complete first
+        finishRehash();
+        //double the number of buckets available
+        rebuild(numBuckets * 2);
+    }
+
+    /**
+     * Complete an incremental rehash that is in progress, if any.
+     */
+    public void finishRehash() {
+        while (oldKeySlots != null)
+            migrate(Integer.MAX_VALUE);
+    }
+
+    /*
+     * Check if an incremental rehash is in progress.
+     */
+    public boolean isRehashing() {
+        return oldKeySlots != null;
+    }
+
+    /*
+     * Checks if the hash table contains the given key.
+     * Return true if the hash table has the specified key, and false otherwise.
+     */
+    public boolean containsKey(K key) {
+        //a key mapped to a null value is still in the table
+        if (key == null)
+            return false;
+        int hash = hash(key);
+        return (findSlot(key, hash) >= 0 || findOldSlot(key, hash) >= 0 || inOverflow(key));
+    }
+
+	/*
+	 * return an ArrayList of the keys in the hashtable
+	 */
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<K> keys() {
+        ArrayList<K> listKeys = new ArrayList<K>(entryCount);
+        //scan all the slots in the table for keys
+        for (int i = 0; i < numBuckets; i++) {
+            if (slot(keySlots, i) != null)
+                listKeys.add(slotKey(i));
+        }
+        //and the entries that have not been migrated yet
+        for (int i = migrateIndex; i < oldNumBuckets; i++) {
+            if (isOldLive(i))
+                listKeys.add(oldSlotKey(i));
+        }
+        //and the ones in the overflow tree
+        if (overflow != null) {
+            for (Object key : overflow.keySet())
+                listKeys.add((K) key);
+        }
+        return listKeys;
+    }
+
+    /*
+     * return an ArrayList of the values in the hashtable
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<V> values() {
+        ArrayList<V> listValues = new ArrayList<V>(entryCount);
+        //scan all the slots in the table for values
+        for (int i = 0; i < numBuckets; i++) {
+            if (slot(keySlots, i) != null)
+                listValues.add(slotValue(i));
+        }
+        //and the entries that have not been migrated yet
+        for (int i = migrateIndex; i < oldNumBuckets; i++) {
+            if (isOldLive(i))
+                listValues.add(oldSlotValue(i));
+        }
+        //and the ones in the overflow tree
+        if (overflow != null) {
+            for (Object value : overflow.values())
+                listValues.add((V) value);
+        }
+        return listValues;
+    }
+
+    @Override
+    public String toString() {
+		/*
+		 * Implemented method. You do not need to modify.
+		 */
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < numBuckets; i++) {
+            sb.append("Bucket ");
+            sb.append(i);
+            sb.append(" has ");
+            sb.append(slot(keySlots, i) == null ? 0 : 1);
+            sb.append(" entries.\n");
+        }
+        sb.append("There are ");
+        sb.append(entryCount);
+        sb.append(" entries in the hash table altogether.");
+        return sb.toString();
+    }
+
+    /*
+     *    Inner class:   Iterator for the Hash Table.
+     */
+    public class HashIterator implements Iterator<HashEntry> {
+        /*
+         * The iterator walks the buckets in place: first the old buckets that still wait
+         * for an incremental rehash, then the new buckets in cyclic order starting at an
+         * empty bucket.  Since no cluster wraps around that empty bucket, the entries
+         * shifted back by a remove() are never ones we have already returned.  The
+         * entries of the overflow tree come last.
+         */
+        private int oldIndex;
+        private int offset;
+        private final int start;
+        private final Iterator<Map.Entry<Object, Object>> overflowEntries;
+
+        //bucket of the entry next() returns, or -1 at the end
+        private int nextIndex;
+        private boolean nextInOld;
+
+        //bucket of the entry last returned by next(), or -1
+        private int lastIndex = -1;
+        private boolean lastInOld;
+        private boolean lastInOverflow;
+
+        private int expectedModCount;
+
+        /**
+         * Constructor:   position the iterator on the first entry of the hash table
+         */
+        public HashIterator() {
+            expectedModCount = modCount;
+            oldIndex = migrateIndex;
+            //find an empty bucket to start from
+            int empty = 0;
+            while (empty < numBuckets && slot(keySlots, empty) != null)
+                empty++;
+            start = empty == numBuckets ? 0 : empty;
+            overflowEntries = overflow == null ? null : overflow.entrySet().iterator();
+            advance();
+        }
+
+        //  Override
+        @Override
+        public boolean hasNext() {
+            return nextIndex >= 0 || (overflowEntries != null && overflowEntries.hasNext());
+        }
+
+        //  Override
+        @Override
+        @SuppressWarnings("unchecked")
+        public HashEntry next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (nextIndex < 0) {
+                if (overflowEntries == null || !overflowEntries.hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<Object, Object> overflowEntry = overflowEntries.next();
+                lastInOverflow = true;
+                return new HashEntry((K) overflowEntry.getKey(), (V) overflowEntry.getValue());
+            }
+            lastIndex = nextIndex;
+            lastInOld = nextInOld;
+            HashEntry entry = lastInOld
+                    ? new HashEntry(oldSlotKey(lastIndex), oldSlotValue(lastIndex))
+                    : new HashEntry(slotKey(lastIndex), slotValue(lastIndex));
+            advance();
+            return entry;
+        }
+
+        /**
+         * Removes the entry last returned by next().  Unlike MyHashTable.remove(), this
+         * never resizes the table or moves the migration forward.
+         */
+        @Override
+        public void remove() {
+            if (lastIndex < 0 && !lastInOverflow)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            version++;
+            if (lastInOverflow) {
+                overflowEntries.remove();
+                modCount++;
+                lastInOverflow = false;
+            } else if (lastInOld) {
+                markOldGone(lastIndex);
+            } else {
+                //the rest of the cluster shifts back into lastIndex, so look at it again
+                deleteSlot(lastIndex);
+                offset = lastIndex - start;
+                if (offset < 0)
+                    offset += numBuckets;
+                advance();
+            }
+            entryCount--;
+            expectedModCount = modCount;
+            lastIndex = -1;
+        }
+
+        /*
+         * Move nextIndex to the next bucket holding an entry.
+         */
+        private void advance() {
+            while (oldIndex < oldNumBuckets) {
+                int index = oldIndex++;
+                if (isOldLive(index)) {
+                    nextIndex = index;
+                    nextInOld = true;
+                    return;
+                }
+            }
+            while (offset < numBuckets) {
+                int index = start + offset++;
+                if (index >= numBuckets)
+                    index -= numBuckets;
+                if (slot(keySlots, index) != null) {
+                    nextIndex = index;
+                    nextInOld = false;
+                    return;
+                }
+            }
+            nextIndex = -1;
+        }
+    }
+
+    /*
+     *    Inner class:   Spliterator for the Hash Table.
+     *
+     *    It covers a range of buckets, numbered with the old buckets first and the new
+     *    ones after them, and splits by halving that range, so parallel streams over the
+     *    table need no copying.  One last position stands for the whole overflow tree.
+     *    Entries are mapped to keys, values or HashEntry objects.
+     */
+    final class TableSpliterator<T> implements Spliterator<T> {
+        private final BiFunction<? super K, ? super V, ? extends T> mapper;
+        private final int characteristics;
+        private final Object[][] keys;
+        private final Object[][] values;
+        private final int buckets;
+        private final Object[][] oldKeys;
+        private final Object[][] oldValues;
+        private final long[] gone;
+        private final int oldBuckets;
+        private final int firstOld;
+        private final TreeMap<Object, Object> overflowMap;
+        private Iterator<Map.Entry<Object, Object>> overflowEntries;
+        private final int entries;
+        private final boolean live;
+        private final int expectedModCount;
+        private int index;
+        private final int fence;
+
+        TableSpliterator(BiFunction<? super K, ? super V, ? extends T> mapper, int characteristics) {
+            this.mapper = mapper;
+            this.characteristics = characteristics;
+            this.keys = keySlots;
+            this.values = valueSlots;
+            this.buckets = numBuckets;
+            this.oldKeys = oldKeySlots;
+            this.oldValues = oldValueSlots;
+            this.gone = oldGone;
+            this.oldBuckets = oldNumBuckets;
+            this.firstOld = migrateIndex;
+            this.overflowMap = overflow;
+            this.entries = entryCount;
+            this.live = true;
+            this.expectedModCount = modCount;
+            this.index = migrateIndex;
+            this.fence = oldNumBuckets + numBuckets + 1;
+        }
+
+        /*
+         * Over the entries of a snapshot, which never change.
+         */
+        TableSpliterator(Snapshot snapshot, BiFunction<? super K, ? super V, ? extends T> mapper, int characteristics) {
+            this.mapper = mapper;
+            this.characteristics = characteristics | Spliterator.IMMUTABLE;
+            this.keys = snapshot.keys;
+            this.values = snapshot.values;
+            this.buckets = snapshot.buckets;
+            this.oldKeys = snapshot.oldKeys;
+            this.oldValues = snapshot.oldValues;
+            this.gone = snapshot.oldGone;
+            this.oldBuckets = snapshot.oldBuckets;
+            this.firstOld = snapshot.firstOld;
+            this.overflowMap = snapshot.overflowMap;
+            this.entries = snapshot.entries;
+            this.live = false;
+            this.expectedModCount = 0;
+            this.index = snapshot.firstOld;
+            this.fence = snapshot.oldBuckets + snapshot.buckets + 1;
+        }
+
+        private TableSpliterator(TableSpliterator<T> parent, int index, int fence) {
+            this.mapper = parent.mapper;
+            this.characteristics = parent.characteristics;
+            this.keys = parent.keys;
+            this.values = parent.values;
+            this.buckets = parent.buckets;
+            this.oldKeys = parent.oldKeys;
+            this.oldValues = parent.oldValues;
+            this.gone = parent.gone;
+            this.oldBuckets = parent.oldBuckets;
+            this.firstOld = parent.firstOld;
+            this.overflowMap = parent.overflowMap;
+            this.entries = parent.entries;
+            this.live = parent.live;
+            this.expectedModCount = parent.expectedModCount;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index)
+                return null;
+            TableSpliterator<T> prefix = new TableSpliterator<T>(this, index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (index < fence) {
+                if (index == oldBuckets + buckets) {
+                    //the overflow tree is handed out one entry at a time
+                    if (overflowEntries == null)
+                        overflowEntries = overflowMap == null ? Collections.emptyIterator() : overflowMap.entrySet().iterator();
+                    if (overflowEntries.hasNext()) {
+                        emitOverflow(overflowEntries.next(), action);
+                        checkForComodification();
+                        return true;
+                    }
+                    index++;
+                    continue;
+                }
+                int i = index++;
+                if (emit(i, action)) {
+                    checkForComodification();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            int i = index;
+            index = fence;
+            for (; i < fence; i++) {
+                if (i == oldBuckets + buckets) {
+                    if (overflowEntries == null)
+                        overflowEntries = overflowMap == null ? Collections.emptyIterator() : overflowMap.entrySet().iterator();
+                    while (overflowEntries.hasNext())
+                        emitOverflow(overflowEntries.next(), action);
+                } else {
+                    emit(i, action);
+                }
+            }
+            checkForComodification();
+        }
+
+        private void checkForComodification() {
+            if (live && modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void emitOverflow(Map.Entry<Object, Object> entry, Consumer<? super T> action) {
+            action.accept(mapper.apply((K) entry.getKey(), (V) entry.getValue()));
+        }
+
+        /*
+         * Pass the entry in bucket i to the action, if there is one.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean emit(int i, Consumer<? super T> action) {
+            if (i < oldBuckets) {
+                Object key = slot(oldKeys, i);
+                if (i < firstOld || key == null || isGone(gone, i))
+                    return false;
+                action.accept(mapper.apply((K) key, (V) slot(oldValues, i)));
+                return true;
+            }
+            Object key = slot(keys, i - oldBuckets);
+            if (key == null)
+                return false;
+            action.accept(mapper.apply((K) key, (V) slot(values, i - oldBuckets)));
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            //assume the entries are spread evenly over the buckets
+            long total = Math.max(1, oldBuckets - firstOld + buckets);
+            return (long) entries * (fence - index) / total;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    //  helper methods
+
+    /*
+     * Return the bucket holding the given key, or -1 if the key is not in the table.
+     * The walk stops at an empty bucket, or as soon as it reaches an entry that is closer
+     * to its home than the key would be: Robin Hood placement guarantees the key is not
+     * further along.
+     */
+    private int findSlot(K key, int hash) {
+        int index = hashFunction(hash);
+        for (int distance = 0; ; distance++) {
+            Object slotKey = slot(keySlots, index);
+            int slotHash = slot(hashSlots, index);
+            if (slotKey == null || probeDistance(slotHash, index) < distance)
+                return recordLookup(distance + 1, -1);
+            //compare the cached hash codes first, equals() is only called on a likely match
+            if (slotHash == hash) {
+                if (metricsEnabled)
+                    equalsCount++;
+                if (slotKey.equals(key))
+                    return recordLookup(distance + 1, index);
+            }
+            if (++index == numBuckets)
+                index = 0;
+        }
+    }
+
+    private int recordLookup(int probes, int slot) {
+        if (metricsEnabled) {
+            lookupCount++;
+            probeCount += probes;
+        }
+        return slot;
+    }
+
+    /*
+     * Robin Hood insertion: walk from the home bucket and, whenever the entry we carry
+     * is further from home than the resident one, swap them and carry on with the resident.
+     */
+    private void placeEntry(Object key, Object value, int hash) {
+        modCount++;
+        int index = hashFunction(hash);
+        int distance = 0;
+        while (slot(keySlots, index) != null) {
+            int residentDistance = probeDistance(slot(hashSlots, index), index);
+            if (residentDistance < distance) {
+                //swap the carried entry with the resident one
+                Object residentKey = slot(keySlots, index);
+                Object residentValue = slot(valueSlots, index);
+                int residentHash = slot(hashSlots, index);
+                setSlot(index, key, value, hash);
+                key = residentKey;
+                value = residentValue;
+                hash = residentHash;
+                distance = residentDistance;
+            }
+            if (++index == numBuckets)
+                index = 0;
+            distance++;
+            if (distance > TREEIFY_THRESHOLD && key instanceof Comparable
+                    && (overflow == null || !overflow.containsKey(key))) {
+                //too far from home: the carried entry goes to the overflow tree, unless the
+                //tree holds a different key that compares equal to it (compareTo() is not
+                //consistent with equals()), which it would overwrite; then it keeps probing
+                if (overflow == null)
+                    overflow = new TreeMap<Object, Object>((a, b) -> compareOverflow(a, b, spreader));
+                overflow.put(key, value);
+                return;
+            }
+        }
+        setSlot(index, key, value, hash);
+    }
+
+    /*
+     * Empty the given bucket with backward-shift deletion: the following entries of the
+     * same cluster move one bucket closer to home, so no tombstones are ever left behind.
+     */
+    private void deleteSlot(int index) {
+        modCount++;
+        int next = index + 1 == numBuckets ? 0 : index + 1;
+        while (slot(keySlots, next) != null && probeDistance(slot(hashSlots, next), next) > 0) {
+            setSlot(index, slot(keySlots, next), slot(valueSlots, next), slot(hashSlots, next));
+            index = next;
+            next = index + 1 == numBuckets ? 0 : index + 1;
+        }
+        setSlot(index, null, null, 0);
+    }
+
+    /*
+     * Store an entry in a bucket, after copying its chunk if a snapshot shares it.
+     */
+    private void setSlot(int index, Object key, Object value, int hash) {
+        int chunk = ownChunk(index);
+        int i = index & CHUNK_MASK;
+        keySlots[chunk][i] = key;
+        valueSlots[chunk][i] = value;
+        hashSlots[chunk][i] = hash;
+    }
+
+    private void setSlotValue(int index, Object value) {
+        int chunk = ownChunk(index);
+        valueSlots[chunk][index & CHUNK_MASK] = value;
+    }
+
+    /*
+     * Make sure the chunk holding the given bucket is not shared with a snapshot, and
+     * return its number.
+     */
+    private int ownChunk(int index) {
+        copyOnWrite();
+        int chunk = index >>> CHUNK_SHIFT;
+        if (chunkShared[chunk]) {
+            keySlots[chunk] = keySlots[chunk].clone();
+            valueSlots[chunk] = valueSlots[chunk].clone();
+            hashSlots[chunk] = hashSlots[chunk].clone();
+            chunkShared[chunk] = false;
+        }
+        return chunk;
+    }
+
+    private static Object slot(Object[][] chunks, int index) {
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    private static int slot(int[][] chunks, int index) {
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /*
+     * Grow or shrink the table to the given number of buckets, either at once or,
+     * in incremental mode, by starting a migration that later updates carry on.
+     */
+    private void resize(int newBuckets) {
+        //only one migration at a time
+        finishRehash();
+        if (!incrementalRehash) {
+            rebuild(newBuckets);
+            return;
+        }
+        recordRehash(numBuckets, newBuckets, true);
+        startMigration(newBuckets);
+    }
+
+    /*
+     * Make the current slots the old table, drained by migrate(), and start over with
+     * empty slots.
+     */
+    private void startMigration(int newBuckets) {
+        oldKeySlots = keySlots;
+        oldValueSlots = valueSlots;
+        oldHashSlots = hashSlots;
+        oldNumBuckets = numBuckets;
+        oldGone = new long[(numBuckets + 63) >>> 6];
+        oldGoneShared = false;
+        migrateIndex = 0;
+        allocateSlots(newBuckets);
+    }
+
+    /*
+     * Called before every write to the slots.  If the chunk directories are shared with a
+     * snapshot, leave them to it and go on with copies, whose chunks are all still shared.
+     */
+    private void copyOnWrite() {
+        if (slotsShared) {
+            keySlots = keySlots.clone();
+            valueSlots = valueSlots.clone();
+            hashSlots = hashSlots.clone();
+            Arrays.fill(chunkShared, true);
+            slotsShared = false;
+        }
+    }
+
+    /*
+     * Move every entry into fresh slot arrays with the given number of buckets.
+     */
+    private void rebuild(int newBuckets) {
+        rebuild(newBuckets, false);
+    }
+
+    /*
+     * Same, but if 'respread' compute the hashes again, after the spreader has changed.
+     */
+    private void rebuild(int newBuckets, boolean respread) {
+        HashTableStats.RehashEvent event = new HashTableStats.RehashEvent();
+        event.begin();
+        long start = System.nanoTime();
+        recordRehash(numBuckets, newBuckets, false);
+        //keep the old slots around while we move the entries
+        Object[][] oldKeys = keySlots;
+        Object[][] oldValues = valueSlots;
+        int[][] oldHashes = hashSlots;
+        int oldBuckets = numBuckets;
+        allocateSlots(newBuckets);
+        //rehash all entries into the new buckets, reusing the cached hash codes
+        for (int i = 0; i < oldBuckets; i++) {
+            Object key = slot(oldKeys, i);
+            if (key != null)
+                placeEntry(key, slot(oldValues, i), respread ? hash(key) : slot(oldHashes, i));
+        }
+        //the overflow entries get another chance in the new buckets
+        reinsertOverflow();
+        rehashNanos += System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()) {
+            event.oldBuckets = oldBuckets;
+            event.newBuckets = newBuckets;
+            event.entries = entryCount;
+            event.incremental = false;
+            event.commit();
+        }
+    }
+
+    private void recordRehash(int oldBuckets, int newBuckets, boolean incremental) {
+        rehashCount++;
+        if (incremental) {
+            HashTableStats.RehashEvent event = new HashTableStats.RehashEvent();
+            if (event.isEnabled()) {
+                event.oldBuckets = oldBuckets;
+                event.newBuckets = newBuckets;
+                event.entries = entryCount;
+                event.incremental = true;
+                event.commit();
+            }
+        }
+    }
+
+    private void allocateSlots(int buckets) {
+        modCount++;
+        this.slotsShared = false;
+        this.numBuckets = buckets;
+        int chunks = (buckets + CHUNK_MASK) >>> CHUNK_SHIFT;
+        this.keySlots = new Object[chunks][];
+        this.valueSlots = new Object[chunks][];
+        this.hashSlots = new int[chunks][];
+        this.chunkShared = new boolean[chunks];
+        for (int c = 0; c < chunks; c++)
+            allocateChunk(c, Math.min(CHUNK_SIZE, buckets - (c << CHUNK_SHIFT)));
+    }
+
+    private void allocateChunk(int chunk, int length) {
+        keySlots[chunk] = new Object[length];
+        valueSlots[chunk] = new Object[length];
+        hashSlots[chunk] = new int[length];
+        chunkShared[chunk] = false;
+    }
+
+    /*
+     * Move up to 'count' old buckets into the new table, and drop the old table once
+     * every bucket has been moved.
+     */
+    private void migrate(int count) {
+        if (oldKeySlots == null)
+            return;
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        while (oldKeySlots != null && count-- > 0) {
+            if (isOldLive(migrateIndex))
+                placeEntry(slot(oldKeySlots, migrateIndex), slot(oldValueSlots, migrateIndex), slot(oldHashSlots, migrateIndex));
+            if (++migrateIndex == oldNumBuckets)
+                dropOldTable();
+        }
+        if (metricsEnabled)
+            rehashNanos += System.nanoTime() - start;
+    }
+
+    private void dropOldTable() {
+        oldKeySlots = null;
+        oldValueSlots = null;
+        oldHashSlots = null;
+        oldGone = null;
+        oldGoneShared = false;
+        oldNumBuckets = 0;
+        migrateIndex = 0;
+    }
+
+    /*
+     * Return the old bucket holding the given key, or -1.  Old buckets below
+     * migrateIndex are already moved, so the walk jumps over them; entries that were
+     * removed since the rehash started are skipped, but they still keep the probe
+     * sequence going since the old arrays are never compacted.
+     */
+    private int findOldSlot(K key, int hash) {
+        if (oldKeySlots == null)
+            return -1;
+        return findOldSlot(oldKeySlots, oldHashSlots, oldGone, oldNumBuckets, migrateIndex, key, hash);
+    }
+
+    /*
+     * Same walk, over the old table of the table or of a snapshot.
+     */
+    private int findOldSlot(Object[][] keys, int[][] hashes, long[] gone, int buckets, int first, Object key, int hash) {
+        int index = Math.max(hashFunction(hash, buckets), first);
+        int start = index;
+        do {
+            Object slotKey = slot(keys, index);
+            if (slotKey == null)
+                return -1;
+            if (slot(hashes, index) == hash && !isGone(gone, index) && slotKey.equals(key))
+                return index;
+            if (++index == buckets)
+                index = first;
+        } while (index != start);
+        return -1;
+    }
+
+    private static boolean isGone(long[] gone, int index) {
+        return (gone[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void markOldGone(int index) {
+        modCount++;
+        if (oldGoneShared) {
+            //a snapshot still needs the bits as they were
+            oldGone = oldGone.clone();
+            oldGoneShared = false;
+        }
+        oldGone[index >>> 6] |= 1L << index;
+    }
+
+    /*
+     * Check if old bucket 'index' holds an entry that still has to be migrated.
+     */
+    private boolean isOldLive(int index) {
+        return slot(oldKeySlots, index) != null && !isGone(oldGone, index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<V> bulkPut(Object[] keys, Object[] values) {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Got " + keys.length + " keys but " + values.length + " values");
+        //a single table, sized for the whole batch
+        version++;
+        finishRehash();
+        int buckets = numBuckets;
+        while (entryCount + keys.length > buckets * MAX_LOAD_FACTOR)
+            buckets *= 2;
+        if (buckets != numBuckets)
+            rebuild(buckets);
+
+        int[] hashes = hashAll(keys);
+        ArrayList<V> previous = new ArrayList<V>(Collections.nCopies(keys.length, (V) null));
+        for (int i : bucketOrder(keys, hashes)) {
+            int slot = findSlot((K) keys[i], hashes[i]);
+            if (slot >= 0) {
+                previous.set(i, slotValue(slot));
+                setSlotValue(slot, values[i]);
+            } else if (inOverflow(keys[i])) {
+                previous.set(i, overflowValue(overflow.put(keys[i], values[i])));
+            } else {
+                placeEntry(keys[i], values[i], hashes[i]);
+                entryCount++;
+            }
+        }
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<V> bulkGet(Object[] keys) {
+        int[] hashes = hashAll(keys);
+        ArrayList<V> found = new ArrayList<V>(Collections.nCopies(keys.length, (V) null));
+        for (int i : bucketOrder(keys, hashes)) {
+            int slot = findSlot((K) keys[i], hashes[i]);
+            if (slot >= 0) {
+                found.set(i, slotValue(slot));
+            } else {
+                int oldSlot = findOldSlot((K) keys[i], hashes[i]);
+                if (oldSlot >= 0)
+                    found.set(i, oldSlotValue(oldSlot));
+                else if (inOverflow(keys[i]))
+                    found.set(i, overflowValue(overflow.get(keys[i])));
+            }
+        }
+        return found;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<V> bulkRemove(Object[] keys) {
+        ArrayList<V> removed = new ArrayList<V>(Collections.nCopies(keys.length, (V) null));
+        //a batch that removes nothing leaves the slots shared with the snapshot
+        if (slotsShared && !containsAny(keys))
+            return removed;
+        version++;
+        finishRehash();
+        int[] hashes = hashAll(keys);
+        for (int i : bucketOrder(keys, hashes)) {
+            int slot = findSlot((K) keys[i], hashes[i]);
+            if (slot >= 0) {
+                removed.set(i, slotValue(slot));
+                deleteSlot(slot);
+                entryCount--;
+            } else if (inOverflow(keys[i])) {
+                modCount++;
+                removed.set(i, overflowValue(overflow.remove(keys[i])));
+                entryCount--;
+            }
+        }
+        untreeify();
+        //shrink once, straight to the final number of buckets
+        int buckets = numBuckets;
+        while (buckets / 2 >= minBuckets && entryCount < buckets * MIN_LOAD_FACTOR)
+            buckets /= 2;
+        if (buckets != numBuckets)
+            resize(buckets);
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean containsAny(Object[] keys) {
+        for (Object key : keys) {
+            if (containsKey((K) key))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Hash codes of a batch of keys; null keys are reported once and then skipped.
+     */
+    private int[] hashAll(Object[] keys) {
+        int[] hashes = new int[keys.length];
+        boolean nullKey = false;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null)
+                nullKey = true;
+            else
+                hashes[i] = hash(keys[i]);
+        }
+        if (nullKey)
+            System.out.println("Skipping null keys in a batch!!");
+        return hashes;
+    }
+
+    /*
+     * Positions of the non-null keys of a batch, sorted by home bucket, so that a batch is
+     * processed in one sweep over the slot arrays instead of jumping around them.
+     */
+    private int[] bucketOrder(Object[] keys, int[] hashes) {
+        long[] packed = new long[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null)
+                packed[count++] = ((long) hashFunction(hashes[i]) << 32) | i;
+        }
+        Arrays.sort(packed, 0, count);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = (int) packed[i];
+        return order;
+    }
+
+    /*
+     * Order of the overflow tree: by hash, then by class name for keys of different
+     * classes, then by compareTo().  Only Comparable keys ever enter the tree, and never
+     * two keys that compare equal (see placeEntry()).
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareOverflow(Object a, Object b, HashSpreader spreader) {
+        int order = Integer.compare(spreader.spread(a.hashCode()), spreader.spread(b.hashCode()));
+        if (order != 0)
+            return order;
+        if (a.getClass() != b.getClass())
+            return a.getClass().getName().compareTo(b.getClass().getName());
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /*
+     * Check if the key is in the overflow tree, which is O(log n) in the tree size.
+     */
+    private boolean inOverflow(Object key) {
+        return overflow != null && !overflow.isEmpty() && key instanceof Comparable && holdsKey(overflow, key);
+    }
+
+    /*
+     * Check that the tree holds a key equal to the given one, not just one that compares
+     * equal to it.
+     */
+    private static boolean holdsKey(TreeMap<Object, Object> tree, Object key) {
+        Object treeKey = tree.ceilingKey(key);
+        return treeKey != null && tree.comparator().compare(treeKey, key) == 0 && treeKey.equals(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V overflowValue(Object value) {
+        return (V) value;
+    }
+
+    /*
+     * Move the entries of the overflow tree back into the buckets; those that still do
+     * not fit go back to the tree.
+     */
+    private void reinsertOverflow() {
+        if (overflow == null || overflow.isEmpty())
+            return;
+        ArrayList<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>(overflow.entrySet());
+        overflow.clear();
+        for (Map.Entry<Object, Object> entry : entries)
+            placeEntry(entry.getKey(), entry.getValue(), hash(entry.getKey()));
+    }
+
+    /*
+     * Switch back from the overflow tree to plain buckets once the tree has shrunk.
+     */
+    private void untreeify() {
+        if (overflow != null && !overflow.isEmpty() && overflow.size() <= UNTREEIFY_THRESHOLD)
+            reinsertOverflow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private K oldSlotKey(int index) {
+        return (K) slot(oldKeySlots, index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V oldSlotValue(int index) {
+        return (V) slot(oldValueSlots, index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K slotKey(int index) {
+        return (K) slot(keySlots, index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V slotValue(int index) {
+        return (V) slot(valueSlots, index);
+    }
+
+    /*
+     *    Inner class:   immutable view of the table, returned by snapshot().
+     *
+     *    It keeps the chunk directories the table had when it was taken (the table
+     *    copies a chunk before writing to it), the old table and the oldGone bits of an
+     *    incremental rehash in progress, and a copy of the overflow tree, which is
+     *    normally small.
+     */
+    public class Snapshot implements Iterable<HashEntry> {
+        private final Object[][] keys;
+        private final Object[][] values;
+        private final int[][] hashes;
+        private final int buckets;
+        private final Object[][] oldKeys;
+        private final Object[][] oldValues;
+        private final int[][] oldHashes;
+        private final long[] oldGone;
+        private final int oldBuckets;
+        private final int firstOld;
+        private final HashSpreader hashSpreader;
+        private final TreeMap<Object, Object> overflowMap;
+        private final int entries;
+        private final long version;
+
+        private Snapshot() {
+            this.keys = keySlots;
+            this.values = valueSlots;
+            this.hashes = hashSlots;
+            this.buckets = numBuckets;
+            this.oldKeys = oldKeySlots;
+            this.oldValues = oldValueSlots;
+            this.oldHashes = oldHashSlots;
+            this.oldGone = MyHashTable.this.oldGone;
+            this.oldBuckets = oldNumBuckets;
+            this.firstOld = migrateIndex;
+            //the table may switch to another spreader later on
+            HashSpreader spreader = MyHashTable.this.spreader;
+            this.hashSpreader = spreader;
+            if (overflow == null || overflow.isEmpty()) {
+                this.overflowMap = null;
+            } else {
+                this.overflowMap = new TreeMap<Object, Object>((a, b) -> compareOverflow(a, b, spreader));
+                this.overflowMap.putAll(overflow);
+            }
+            this.entries = entryCount;
+            this.version = MyHashTable.this.version;
+        }
+
+        public int size() {
+            return entries;
+        }
+
+        public boolean isEmpty() {
+            return entries == 0;
+        }
+
+        /*
+         * Version of the table this snapshot was taken at; see MyHashTable.getVersion().
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Retrieves the value the key had when the snapshot was taken, or null.
+         */
+        @SuppressWarnings("unchecked")
+        public V get(K key) {
+            if (key == null) {
+                System.out.println("Trying to access an element with a null key!!");
+                return null;
+            }
+            int hash = hashSpreader.spread(key.hashCode());
+            int slot = findSlot(key, hash);
+            if (slot >= 0)
+                return (V) slot(values, slot);
+            int oldSlot = findOldSlot(key, hash);
+            if (oldSlot >= 0)
+                return (V) slot(oldValues, oldSlot);
+            if (!inOverflowMap(key))
+                return null;
+            else
+                return (V) overflowMap.get(key);
+        }
+
+        public boolean containsKey(K key) {
+            if (key == null)
+                return false;
+            int hash = hashSpreader.spread(key.hashCode());
+            return findSlot(key, hash) >= 0 || findOldSlot(key, hash) >= 0 || inOverflowMap(key);
+        }
+
+        @Override
+        public Iterator<HashEntry> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        @Override
+        public Spliterator<HashEntry> spliterator() {
+            return new TableSpliterator<HashEntry>(this, HashEntry::new, Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+
+        public Stream<HashEntry> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        /*
+         * Same walk as MyHashTable.findSlot(), over the snapshot's arrays.
+         */
+        private int findSlot(Object key, int hash) {
+            int index = hashFunction(hash, buckets);
+            for (int distance = 0; ; distance++) {
+                Object slotKey = slot(keys, index);
+                if (slotKey == null)
+                    return -1;
+                int slotHash = slot(hashes, index);
+                int residentDistance = index - hashFunction(slotHash, buckets);
+                if ((residentDistance < 0 ? residentDistance + buckets : residentDistance) < distance)
+                    return -1;
+                if (slotHash == hash && slotKey.equals(key))
+                    return index;
+                if (++index == buckets)
+                    index = 0;
+            }
+        }
+
+        private int findOldSlot(Object key, int hash) {
+            if (oldKeys == null)
+                return -1;
+            return MyHashTable.this.findOldSlot(oldKeys, oldHashes, oldGone, oldBuckets, firstOld, key, hash);
+        }
+
+        private boolean inOverflowMap(Object key) {
+            return overflowMap != null && key instanceof Comparable && holdsKey(overflowMap, key);
+        }
+    }
+
+    class HashEntry {
+
+        private K key;
+        private V value;
+
+        /*
+         * Constructor.
+         */
+        HashEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /*
+         * Returns this hash entry's key.   Assume entry is not null.
+         * @return This hash entry's key
+         */
+        K getKey() {
+            return (key);
+        }
+
+        /**
+         * Returns this hash entry's value.  Assume entry is not null.
+         */
+        V getValue() {
+            return (value);
+        }
+
+        /**
+         * Sets this hash entry's value.  Entries returned by the iterator are copies of
+         * the table's buckets, so this does not change the table: use put() for that.
+         */
+        void setValue(V value) {
+            this.value = value;
+        }
+    }
+
+
+}
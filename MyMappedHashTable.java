@@ -0,0 +1,601 @@
+package a4q1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+ *  Persistent hash table with the same put/get/remove/containsKey API as MyHashTable,
+ *  whose buckets and entries live in memory-mapped files instead of the Java heap.
+ *
+ *  Two files are used, next to the path given to the constructor:
+ *
+ *   - "<path>.idx" holds a header and the buckets.  Each bucket is 12 bytes: the hash of
+ *     the serialized key and the offset of its entry in the data file (0 for an empty
+ *     bucket, -1 for a removed one).  Buckets are probed linearly.
+ *   - "<path>.dat<generation>" holds the entries one after the other, as
+ *     [key length][value length][key bytes][value bytes].  It is mapped in chunks of
+ *     CHUNK_SIZE bytes, so it can grow far beyond the heap and beyond 2 GB.
+ *
+ *  Opening an existing table only maps the files: nothing is re-inserted.  Keys are
+ *  compared through their serialized bytes, so a key serializer must always produce the
+ *  same bytes for equal keys, and the hash is computed from those bytes because
+ *  hashCode() is not guaranteed to be stable across runs.
+ *
+ *  Changes reach the disk when the operating system writes back the mapped pages, or on
+ *  force() and close().  This class is not thread-safe.
+ */
+class MyMappedHashTable<K, V> implements Closeable {
+
+    /*
+     *  Converts keys or values to and from bytes.
+     */
+    interface Serializer<T> {
+        byte[] serialize(T value);
+
+        // 'bytes' holds exactly the serialized value, between its position and its limit
+        T deserialize(ByteBuffer bytes);
+
+        Serializer<String> STRING = new Serializer<String>() {
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            public String deserialize(ByteBuffer bytes) {
+                byte[] data = new byte[bytes.remaining()];
+                bytes.get(data);
+                return new String(data, StandardCharsets.UTF_8);
+            }
+        };
+
+        Serializer<Integer> INTEGER = new Serializer<Integer>() {
+            public byte[] serialize(Integer value) {
+                return ByteBuffer.allocate(4).putInt(value).array();
+            }
+
+            public Integer deserialize(ByteBuffer bytes) {
+                return bytes.getInt(bytes.position());
+            }
+        };
+
+        Serializer<Long> LONG = new Serializer<Long>() {
+            public byte[] serialize(Long value) {
+                return ByteBuffer.allocate(8).putLong(value).array();
+            }
+
+            public Long deserialize(ByteBuffer bytes) {
+                return bytes.getLong(bytes.position());
+            }
+        };
+    }
+
+    /**
+     * Threshold load factor (live and removed buckets) for rehashing.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /*
+     * Size of the chunks the data file is mapped in; an entry never spans two chunks.
+     */
+    static final int CHUNK_SIZE = 1 << 26;
+
+    private static final int MAGIC = 0x4d485431;  // "MHT1"
+    private static final long DATA_MAGIC = 0x4d48544461746131L;
+
+    // layout of the index file header
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC_AT = 0;
+    private static final int BUCKETS_AT = 4;
+    private static final int COUNT_AT = 8;
+    private static final int REMOVED_AT = 12;
+    private static final int GENERATION_AT = 16;
+    private static final int DATA_END_AT = 24;
+
+    private static final int BUCKET_SIZE = 12;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    private final Path path;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+
+    private MappedByteBuffer index;
+    private FileChannel data;
+    private final ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+
+    // cached copies of the header fields
+    private int numBuckets;
+    private int entryCount;
+    private int removedCount;
+    private int generation;
+    private long dataEnd;
+
+	/*
+	 * Constructor.
+	 *
+	 * Opens the table stored at 'path', or creates an empty one with numBuckets buckets
+	 * if there is none yet.
+	 */
+    MyMappedHashTable(Path path, int numBuckets, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        this.path = path;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        Path indexPath = indexPath();
+        if (Files.exists(indexPath)) {
+            //reopen: map the files and read the header, nothing else
+            index = mapIndex(indexPath, Files.size(indexPath));
+            if (index.getInt(MAGIC_AT) != MAGIC)
+                throw new IOException(indexPath + " is not a hash table index");
+            this.numBuckets = index.getInt(BUCKETS_AT);
+            this.entryCount = index.getInt(COUNT_AT);
+            this.removedCount = index.getInt(REMOVED_AT);
+            this.generation = index.getInt(GENERATION_AT);
+            this.dataEnd = index.getLong(DATA_END_AT);
+            data = FileChannel.open(dataPath(generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (chunk(0).getLong(0) != DATA_MAGIC)
+                throw new IOException(dataPath(generation) + " is not a hash table data file");
+        } else {
+            //make sure that numBuckets is valid
+            if (numBuckets <= 0) {
+                System.out.println("Cannot create a hashtable with zero buckets");
+                numBuckets = 1;
+            }
+            data = openNewData(generation);
+            dataEnd = 8;
+            index = writeIndex(numBuckets, false);
+        }
+    }
+
+    /**
+     * Checking if the hash table is empty.
+     */
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    /**
+     * return the number of entries in the hash table.
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+    /*
+     * Number of bytes used in the data file, including entries that were replaced or
+     * removed since the last compact().
+     */
+    public long getDataSize() {
+        return dataEnd;
+    }
+
+    /**
+     * Adds a key-value pair to the hash table.  If there was a previous value for the
+     * given key in this hashtable, then return it.  Otherwise return null.
+     */
+    public V put(K key, V value) {
+        //make sure that the key and the value are valid
+        if (key == null || value == null) {
+            System.out.println("Inserting a null key or value into the table!!");
+            return null;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        int hash = hashBytes(keyBytes);
+
+        int bucket = findBucket(keyBytes, hash);
+        if (bucket >= 0) {
+            long offset = bucketOffset(bucket);
+            V ret = readValue(offset);
+            ByteBuffer chunk = chunk(chunkOf(offset));
+            int position = positionOf(offset);
+            if (chunk.getInt(position + 4) == valueBytes.length) {
+                //same size: overwrite the value where it is
+                putBytes(chunk, position + 8 + keyBytes.length, valueBytes);
+            } else {
+                setBucket(bucket, hash, append(keyBytes, valueBytes));
+            }
+            return ret;
+        }
+
+        //a new key goes into the first free bucket of its probe sequence
+        long offset = append(keyBytes, valueBytes);
+        bucket = hashFunction(hash);
+        while (bucketOffset(bucket) > EMPTY)
+            bucket = (bucket + 1) % numBuckets;
+        if (bucketOffset(bucket) == REMOVED)
+            setRemovedCount(removedCount - 1);
+        setBucket(bucket, hash, offset);
+        setEntryCount(entryCount + 1);
+
+        // rehash if the load factor goes above the MAX_LOAD_FACTOR
+        if ((double) (entryCount + removedCount) / numBuckets > MAX_LOAD_FACTOR)
+            rehash();
+        return null;
+    }
+
+    /**
+     * Retrieves a value associated with some given key in the hash table.
+     * Returns null if the key could not be found in the hash table.
+     */
+    public V get(K key) {
+        //make sure that the key is valid
+        if (key == null) {
+            System.out.println("Trying to access an element with a null key!!");
+            return null;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        int bucket = findBucket(keyBytes, hashBytes(keyBytes));
+        return bucket < 0 ? null : readValue(bucketOffset(bucket));
+    }
+
+    /*
+     * Checks if the hash table contains the given key.
+     */
+    public boolean containsKey(K key) {
+        if (key == null)
+            return false;
+        byte[] keyBytes = keySerializer.serialize(key);
+        return findBucket(keyBytes, hashBytes(keyBytes)) >= 0;
+    }
+
+    /**
+     * Removes a key-value pair from the hash table.
+     * Return value associated with the provided key.   If the key is not found, return null.
+     */
+    public V remove(K key) {
+        //make sure that the key is valid
+        if (key == null) {
+            System.out.println("Trying to remove an element with a null key!!");
+            return null;
+        }
+        byte[] keyBytes = keySerializer.serialize(key);
+        int hash = hashBytes(keyBytes);
+        int bucket = findBucket(keyBytes, hash);
+        if (bucket < 0)
+            return null;
+        V ret = readValue(bucketOffset(bucket));
+        //the bucket is marked removed so that the probe sequences going through it still work
+        setBucket(bucket, 0, REMOVED);
+        setEntryCount(entryCount - 1);
+        setRemovedCount(removedCount + 1);
+        return ret;
+    }
+
+    /**
+     * Removes all the entries from the hash table, but keeps the number of buckets intact.
+     */
+    public void clear() {
+        entryCount = 0;
+        removedCount = 0;
+        dataEnd = 8;
+        try {
+            index = writeIndex(numBuckets, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create a new index that has twice the number of buckets (or the same number, if
+     * most of the used buckets were removed ones).  The entries in the data file stay
+     * where they are, and since the buckets keep the hash, no key is read back.
+     */
+    public void rehash() {
+        int buckets = entryCount > numBuckets * MAX_LOAD_FACTOR / 2 ? numBuckets * 2 : numBuckets;
+        try {
+            index = writeIndex(buckets, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rewrite the data file without the space of replaced and removed entries.  The new
+     * data file becomes current when the new index replaces the old one, so a crash
+     * during compact() leaves the table as it was.
+     */
+    public void compact() throws IOException {
+        int newGeneration = generation + 1;
+        FileChannel newData = openNewData(newGeneration);
+        ArrayList<MappedByteBuffer> newChunks = new ArrayList<MappedByteBuffer>();
+        long newEnd = 8;
+        //copy the live entries and point their buckets at the copies
+        Path tmp = tmpIndexPath();
+        Files.deleteIfExists(tmp);
+        MappedByteBuffer newIndex = mapIndex(tmp, HEADER_SIZE + (long) numBuckets * BUCKET_SIZE);
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            long offset = bucketOffset(bucket);
+            long newOffset = offset;
+            if (offset > EMPTY) {
+                ByteBuffer chunk = chunk(chunkOf(offset));
+                int position = positionOf(offset);
+                int length = 8 + chunk.getInt(position) + chunk.getInt(position + 4);
+                newOffset = alignRecord(newEnd, length);
+                ByteBuffer from = chunk.duplicate();
+                from.position(position).limit(position + length);
+                ByteBuffer to = mapChunk(newData, newChunks, chunkOf(newOffset)).duplicate();
+                to.position(positionOf(newOffset));
+                to.put(from);
+                newEnd = newOffset + length;
+            }
+            newIndex.putInt(HEADER_SIZE + bucket * BUCKET_SIZE, index.getInt(HEADER_SIZE + bucket * BUCKET_SIZE));
+            newIndex.putLong(HEADER_SIZE + bucket * BUCKET_SIZE + 4, newOffset);
+        }
+        for (MappedByteBuffer chunk : newChunks)
+            chunk.force();
+        newData.force(true);
+        writeHeader(newIndex, numBuckets, entryCount, removedCount, newGeneration, newEnd);
+        newIndex.force();
+        //commit point: the new index refers to the new data file
+        Files.move(tmp, indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        data.close();
+        Files.deleteIfExists(dataPath(generation));
+        index = newIndex;
+        data = newData;
+        chunks.clear();
+        chunks.addAll(newChunks);
+        generation = newGeneration;
+        dataEnd = newEnd;
+    }
+
+	/*
+	 * return an ArrayList of the keys in the hashtable
+	 */
+    public ArrayList<K> keys() {
+        ArrayList<K> listKeys = new ArrayList<K>(entryCount);
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            long offset = bucketOffset(bucket);
+            if (offset > EMPTY)
+                listKeys.add(readKey(offset));
+        }
+        return listKeys;
+    }
+
+    /*
+     * return an ArrayList of the values in the hashtable
+     */
+    public ArrayList<V> values() {
+        ArrayList<V> listValues = new ArrayList<V>(entryCount);
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            long offset = bucketOffset(bucket);
+            if (offset > EMPTY)
+                listValues.add(readValue(offset));
+        }
+        return listValues;
+    }
+
+    /*
+     * Write all the changes to the disk.
+     */
+    public void force() throws IOException {
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+        data.force(true);
+        index.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        data.close();
+    }
+
+    //  helper methods
+
+    private Path indexPath() {
+        return path.resolveSibling(path.getFileName() + ".idx");
+    }
+
+    private Path tmpIndexPath() {
+        return path.resolveSibling(path.getFileName() + ".idx.tmp");
+    }
+
+    private Path dataPath(int generation) {
+        return path.resolveSibling(path.getFileName() + ".dat" + generation);
+    }
+
+    private int hashFunction(int hash) {
+        return (hash & 0x7fffffff) % numBuckets;
+    }
+
+    /*
+     * FNV-1a hash of the serialized key, followed by a final mix of the bits.
+     */
+    private static int hashBytes(byte[] bytes) {
+        int h = 0x811c9dc5;
+        for (byte b : bytes)
+            h = (h ^ b) * 0x01000193;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    /*
+     * Return the bucket holding the given serialized key, or -1.
+     */
+    private int findBucket(byte[] keyBytes, int hash) {
+        int bucket = hashFunction(hash);
+        for (int probes = 0; probes < numBuckets; probes++) {
+            long offset = bucketOffset(bucket);
+            if (offset == EMPTY)
+                return -1;
+            if (offset != REMOVED && index.getInt(HEADER_SIZE + bucket * BUCKET_SIZE) == hash && keyEquals(offset, keyBytes))
+                return bucket;
+            bucket = (bucket + 1) % numBuckets;
+        }
+        return -1;
+    }
+
+    private long bucketOffset(int bucket) {
+        return index.getLong(HEADER_SIZE + bucket * BUCKET_SIZE + 4);
+    }
+
+    private void setBucket(int bucket, int hash, long offset) {
+        index.putInt(HEADER_SIZE + bucket * BUCKET_SIZE, hash);
+        index.putLong(HEADER_SIZE + bucket * BUCKET_SIZE + 4, offset);
+    }
+
+    private void setEntryCount(int count) {
+        entryCount = count;
+        index.putInt(COUNT_AT, count);
+    }
+
+    private void setRemovedCount(int count) {
+        removedCount = count;
+        index.putInt(REMOVED_AT, count);
+    }
+
+    private static int chunkOf(long offset) {
+        return (int) (offset / CHUNK_SIZE);
+    }
+
+    private static int positionOf(long offset) {
+        return (int) (offset % CHUNK_SIZE);
+    }
+
+    /*
+     * Offset at which a record of the given length can be written at or after 'end',
+     * without crossing a chunk boundary.
+     */
+    private static long alignRecord(long end, int length) {
+        if (chunkOf(end) != chunkOf(end + length - 1))
+            return (long) (chunkOf(end) + 1) * CHUNK_SIZE;
+        return end;
+    }
+
+    /*
+     * Append an entry to the data file and return its offset.
+     */
+    private long append(byte[] keyBytes, byte[] valueBytes) {
+        int length = 8 + keyBytes.length + valueBytes.length;
+        if (length > CHUNK_SIZE)
+            throw new IllegalArgumentException("Entry of " + length + " bytes does not fit in a chunk");
+        long offset = alignRecord(dataEnd, length);
+        ByteBuffer chunk = chunk(chunkOf(offset));
+        int position = positionOf(offset);
+        chunk.putInt(position, keyBytes.length);
+        chunk.putInt(position + 4, valueBytes.length);
+        putBytes(chunk, position + 8, keyBytes);
+        putBytes(chunk, position + 8 + keyBytes.length, valueBytes);
+        dataEnd = offset + length;
+        index.putLong(DATA_END_AT, dataEnd);
+        return offset;
+    }
+
+    private static void putBytes(ByteBuffer chunk, int position, byte[] bytes) {
+        ByteBuffer to = chunk.duplicate();
+        to.position(position);
+        to.put(bytes);
+    }
+
+    private boolean keyEquals(long offset, byte[] keyBytes) {
+        ByteBuffer chunk = chunk(chunkOf(offset));
+        int position = positionOf(offset);
+        if (chunk.getInt(position) != keyBytes.length)
+            return false;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (chunk.get(position + 8 + i) != keyBytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private K readKey(long offset) {
+        ByteBuffer bytes = chunk(chunkOf(offset)).duplicate();
+        int position = positionOf(offset);
+        bytes.position(position + 8).limit(position + 8 + bytes.getInt(position));
+        return keySerializer.deserialize(bytes.slice());
+    }
+
+    private V readValue(long offset) {
+        ByteBuffer bytes = chunk(chunkOf(offset)).duplicate();
+        int position = positionOf(offset);
+        int start = position + 8 + bytes.getInt(position);
+        bytes.position(start).limit(start + bytes.getInt(position + 4));
+        return valueSerializer.deserialize(bytes.slice());
+    }
+
+    private MappedByteBuffer chunk(int i) {
+        return mapChunk(data, chunks, i);
+    }
+
+    /*
+     * Map chunk i of a data file, growing the file if needed.
+     */
+    private static MappedByteBuffer mapChunk(FileChannel channel, ArrayList<MappedByteBuffer> mapped, int i) {
+        try {
+            while (mapped.size() <= i)
+                mapped.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) mapped.size() * CHUNK_SIZE, CHUNK_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return mapped.get(i);
+    }
+
+    private FileChannel openNewData(int generation) throws IOException {
+        FileChannel channel = FileChannel.open(dataPath(generation), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.allocate(8).putLong(0, DATA_MAGIC));
+        return channel;
+    }
+
+    private static MappedByteBuffer mapIndex(Path file, long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Too many buckets for a single index mapping");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /*
+     * Write a new index with the given number of buckets next to the current one, with
+     * the live entries if 'keepEntries', and atomically replace the current one with it.
+     */
+    private MappedByteBuffer writeIndex(int buckets, boolean keepEntries) throws IOException {
+        Path tmp = tmpIndexPath();
+        Files.deleteIfExists(tmp);
+        MappedByteBuffer newIndex = mapIndex(tmp, HEADER_SIZE + (long) buckets * BUCKET_SIZE);
+        if (keepEntries) {
+            for (int bucket = 0; bucket < numBuckets; bucket++) {
+                long offset = bucketOffset(bucket);
+                if (offset <= EMPTY)
+                    continue;
+                int hash = index.getInt(HEADER_SIZE + bucket * BUCKET_SIZE);
+                int newBucket = (hash & 0x7fffffff) % buckets;
+                while (newIndex.getLong(HEADER_SIZE + newBucket * BUCKET_SIZE + 4) != EMPTY)
+                    newBucket = (newBucket + 1) % buckets;
+                newIndex.putInt(HEADER_SIZE + newBucket * BUCKET_SIZE, hash);
+                newIndex.putLong(HEADER_SIZE + newBucket * BUCKET_SIZE + 4, offset);
+            }
+        }
+        numBuckets = buckets;
+        removedCount = 0;
+        writeHeader(newIndex, numBuckets, entryCount, removedCount, generation, dataEnd);
+        newIndex.force();
+        Files.move(tmp, indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return newIndex;
+    }
+
+    private static void writeHeader(ByteBuffer header, int buckets, int count, int removed, int generation, long dataEnd) {
+        header.putInt(MAGIC_AT, MAGIC);
+        header.putInt(BUCKETS_AT, buckets);
+        header.putInt(COUNT_AT, count);
+        header.putInt(REMOVED_AT, removed);
+        header.putInt(GENERATION_AT, generation);
+        header.putLong(DATA_END_AT, dataEnd);
+    }
+}
@@ -1,18 +1,44 @@
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
- *  Trie class.  Each node is associated with a prefix of some key 
+ *  Trie class.  Each node is associated with a prefix of some key
  *  stored in the trie.   (Any string is a prefix of itself.)
+ *
+ *  The trie is path-compressed (a radix or Patricia trie): a chain of nodes with a
+ *  single child and no key is merged into one edge labelled with several characters,
+ *  so there are at most two nodes per key.  Each node keeps its children in a small
+ *  sorted array that grows with the number of children, and only switches to a table
+ *  indexed by character once it has many children (as in an adaptive radix tree).
  */
 
 public class Trie {
+    // loadKeys() builds parts of the trie in parallel from this many unsorted keys up
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // largest number of removed nodes kept for reuse
+    private static final int MAX_POOL_SIZE = 1024;
+
     private TrieNode root;
 
-    // Empty trie has just a root node.  All the children are null.
+    // number of keys in the trie
+    private int size;
+
+    // number of nodes in the trie, including the root
+    private int nodeCount;
+
+    // removed nodes, chained through their parent field, that new nodes are taken from
+    private TrieNode pool;
+    private int poolSize;
+
+    // Empty trie has just a root node, without children.
 
     public Trie() {
         root = new TrieNode();
+        nodeCount = 1;
     }
 
     public TrieNode getRoot() {
@@ -22,78 +48,420 @@ public class Trie {
 
     /*
      * Insert key into the trie.  First, find the longest
-     * prefix of a key that is already in the trie (use getPrefixNode() below).
-     * Then, add TrieNode(s) such that the key is inserted
-     * according to the specification in PDF.
+     * prefix of a key that ends at a node of the trie (use getPrefixNode() below).
+     * Then, either mark that node, add a leaf for the rest of the key, or split the
+     * edge that the key leaves the trie in.
      */
     public void insert(String key) {
         //guard for empty strings
         if (key.length()!=0){
-            //skip the longest prefix already in the tree
-            TrieNode curnode = getPrefixNode(key);
-
-            //we start adding missing characters starting from this index
-            int idx = curnode.depth;
-
-            //start adding char by char from [idx] -> [key.length()-1]
-            while (idx < key.length()) {
-                //get the character that we want to add
-                char c = key.charAt(idx);
-                //we create a new child to with the current char
-                //then we move to this new node
-                curnode = curnode.createChild(c);
-                //move to the next char
-                idx++;
-            }
+            TrieNode curnode = insertNode(key);
             //this must be an end of a word
-            curnode.setEndOfKey(true);
+            if (!curnode.isEndOfKey()) {
+                curnode.setEndOfKey(true);
+                size++;
+                addToKeyCount(curnode, 1);
+                updateMaxScore(curnode);
+            }
+        }
+    }
+
+    /*
+     * Insert key with the given score (such as a frequency), or set the score of the key
+     * if it is already in the trie.  Keys added by insert(key) have a score of 0.
+     */
+    public void insert(String key, long score) {
+        //guard for empty strings
+        if (key.length()!=0){
+            TrieNode curnode = insertNode(key);
+            if (!curnode.isEndOfKey()) {
+                curnode.setEndOfKey(true);
+                size++;
+                addToKeyCount(curnode, 1);
+            }
+            curnode.score = score;
+            updateMaxScore(curnode);
         }
     }
 
-    // insert each key in the list (keys)
+    /*
+     * Return the score of the key, or null if the key is not in the trie.
+     */
+    public Long getScore(String key) {
+        TrieNode res = getPrefixNode(key);
+        if (res.depth == key.length() && res.isEndOfKey())
+            return res.score;
+        else
+            return null;
+    }
+
+    /*
+     * Return the node for key, adding nodes for it if needed (key is not empty).
+     */
+    private TrieNode insertNode(String key) {
+        return insertNode(root, key);
+    }
+
+    /*
+     * Same, starting the walk at 'from', whose prefix must be a prefix of key.
+     */
+    private TrieNode insertNode(TrieNode from, String key) {
+        //skip the longest prefix already in the tree
+        TrieNode curnode = getPrefixNode(from, key);
+
+        //we start adding missing characters starting from this index
+        int idx = curnode.depth;
+
+        if (idx < key.length()) {
+            TrieNode child = curnode.getChild(key.charAt(idx));
+            if (child == null) {
+                //no edge starts with the next character: the rest of the key is one new edge
+                curnode = curnode.addChild(newNode(key.substring(idx)));
+            } else {
+                //the key leaves the trie in the middle of the child's edge, so split it there
+                int common = child.matchLabel(key, idx);
+                curnode = child.split(common, newNode(key.substring(idx, idx + common)));
+                if (idx + common < key.length())
+                    curnode = curnode.addChild(newNode(key.substring(idx + common)));
+            }
+        }
+        return curnode;
+    }
+
+    /*
+     * Remove key from the trie.  Return true if it was in the trie, false otherwise.
+     * Nodes that no longer lead to any key are removed, and a node left with a single
+     * child is merged with it, so the trie has the same shape as if the key had never
+     * been inserted.
+     */
+    public boolean remove(String key) {
+        TrieNode node = getPrefixNode(key);
+        if (node == root || node.depth != key.length() || !node.isEndOfKey())
+            return false;
+        node.setEndOfKey(false);
+        node.score = 0;
+        size--;
+        addToKeyCount(node, -1);
+        prune(node);
+        return true;
+    }
 
+    /*
+     * Remove all the keys with the given prefix, and return how many there were.
+     */
+    public int removeAllWithPrefix(String prefix) {
+        TrieNode top = getMatchNode(prefix);
+        if (top == null)
+            return 0;
+        //unlink the subtree first: freed nodes lose their labels and parents
+        ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+        TrieNode parent = top.parent;
+        if (top == root) {
+            pushChildren(stack, root);
+            root.removeAllChildren();
+        } else {
+            parent.removeChild(top);
+            stack.push(top);
+        }
+        int removed = 0;
+        while (!stack.isEmpty()) {
+            TrieNode cur = stack.pop();
+            if (cur.isEndOfKey())
+                removed++;
+            pushChildren(stack, cur);
+            freeNode(cur);
+        }
+        size -= removed;
+        addToKeyCount(parent == null ? root : parent, -removed);
+        prune(parent == null ? root : parent);
+        return removed;
+    }
+
+    /*
+     * Restore the shape of the trie around a node that has lost its key or a child: a
+     * node left without key and children goes away, and a node left without key and
+     * with a single child is merged into that child.  Then bring maxScore up to date.
+     */
+    private void prune(TrieNode node) {
+        while (node != root && !node.isEndOfKey() && node.numChildren == 0) {
+            TrieNode parent = node.parent;
+            parent.removeChild(node);
+            freeNode(node);
+            node = parent;
+        }
+        if (node != root && !node.isEndOfKey() && node.numChildren == 1) {
+            TrieNode child = node.getOnlyChild();
+            TrieNode parent = node.parent;
+            child.label = node.label + child.label;
+            child.parent = parent;
+            parent.replaceChild(node, child);
+            freeNode(node);
+            node = parent;
+        }
+        updateMaxScore(node);
+    }
+
+    /*
+     * Return a node for the edge 'label', reusing a removed node if there is one.
+     */
+    private TrieNode newNode(String label) {
+        nodeCount++;
+        TrieNode node = pool;
+        if (node == null)
+            return new TrieNode(label);
+        pool = node.parent;
+        poolSize--;
+        node.parent = null;
+        node.label = label;
+        return node;
+    }
+
+    /*
+     * Forget a node that has been taken out of the trie, and keep it for reuse unless
+     * the pool is full.
+     */
+    private void freeNode(TrieNode node) {
+        nodeCount--;
+        node.clear();
+        if (poolSize < MAX_POOL_SIZE) {
+            node.parent = pool;
+            pool = node;
+            poolSize++;
+        }
+    }
+
+    /*
+     * The node has gained (or lost, if delta is negative) keys: update the key counts of
+     * the node and its ancestors.
+     */
+    private static void addToKeyCount(TrieNode node, int delta) {
+        for (TrieNode cur = node; cur != null; cur = cur.parent)
+            cur.keyCount += delta;
+    }
+
+    /*
+     * The score or the key flag of the node has changed: bring maxScore up to date on
+     * the path to the root, as far as it changes.
+     */
+    private void updateMaxScore(TrieNode node) {
+        for (TrieNode cur = node; cur != null; cur = cur.parent) {
+            long max = cur.computeMaxScore();
+            if (max == cur.maxScore)
+                break;
+            cur.maxScore = max;
+        }
+    }
+
+    /*
+     * Insert each key in the list (keys).
+     * <p>
+     * Sorted keys are added in a single pass: each key shares a prefix with the one
+     * before it, so its walk starts from the node of the previous key instead of the root.
+     * On a multi-core machine, a large unsorted list is split by first character, and the
+     * parts are built as separate tries on the fork-join pool, then linked under the root.
+     */
     public void loadKeys(ArrayList<String> keys) {
-        for (int i = 0; i < keys.size(); i++) {
-            insert(keys.get(i));
+        if (isSorted(keys)) {
+            loadSortedKeys(keys);
+        } else if (keys.size() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+            loadKeysInParallel(keys);
+        } else {
+            for (int i = 0; i < keys.size(); i++) {
+                insert(keys.get(i));
+            }
+        }
+    }
+
+    private static boolean isSorted(List<String> keys) {
+        for (int i = 1; i < keys.size(); i++) {
+            if (keys.get(i - 1).compareTo(keys.get(i)) > 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void loadSortedKeys(List<String> keys) {
+        TrieNode last = root;
+        String previous = "";
+        for (String key : keys) {
+            if (key.length() == 0)
+                continue;
+            TrieNode curnode = insertNode(resumeNode(last, previous, key), key);
+            if (!curnode.isEndOfKey()) {
+                curnode.setEndOfKey(true);
+                size++;
+                addToKeyCount(curnode, 1);
+                updateMaxScore(curnode);
+            }
+            last = curnode;
+            previous = key;
+        }
+    }
+
+    /*
+     * Go back up from 'last', a node on the path of the previous key, to the deepest node
+     * of that path that is also on the path of key: the walk for key can start there.
+     */
+    private static TrieNode resumeNode(TrieNode last, String previous, String key) {
+        int common = 0;
+        int n = Math.min(previous.length(), key.length());
+        while (common < n && previous.charAt(common) == key.charAt(common))
+            common++;
+        while (last.depth > common)
+            last = last.parent;
+        return last;
+    }
+
+    private void loadKeysInParallel(ArrayList<String> keys) {
+        //keys whose first character already has a subtree are simply inserted
+        HashMap<Character, ArrayList<String>> groups = new HashMap<Character, ArrayList<String>>();
+        for (String key : keys) {
+            if (key.length() == 0)
+                continue;
+            char c = key.charAt(0);
+            if (root.getChild(c) != null)
+                insert(key);
+            else
+                groups.computeIfAbsent(c, first -> new ArrayList<String>()).add(key);
         }
-        return;
+        //build one trie per first character, in parallel
+        List<Trie> parts = groups.values().parallelStream().map(group -> {
+            Trie part = new Trie();
+            for (String key : group)
+                part.insert(key);
+            return part;
+        }).collect(Collectors.toList());
+        //each part has a single child under its root, which becomes a child of our root
+        for (Trie part : parts) {
+            for (TrieNode top : part.root.children) {
+                if (top != null)
+                    root.addChild(top);
+            }
+            size += part.size;
+            root.keyCount += part.size;
+            nodeCount += part.nodeCount - 1;
+        }
+        updateMaxScore(root);
     }
 
     /*
-     * Given an input key, return the TrieNode corresponding the longest prefix that is found.
-     * If no prefix is found, return the root.
+     * Given an input key, return the deepest TrieNode whose prefix is a prefix of the key.
+     * If no such node is found, return the root.
      * In the example in the PDF, running getPrefixNode("any") should return the
-     * dashed node under "n", since "an" is the longest prefix of "any" in the trie.
+     * node for "an", since "an" is the longest prefix of "any" in the trie.
      */
     private TrieNode getPrefixNode(String key) {
         //start from root
-        TrieNode res = this.getRoot();
-        //we start matching character by character
-        int idx = 0;
-        //while we still have characters to match and the current
-        //node have a child with the required character, move to that child
-        //and re-do the same operation for the next character
-        while (idx < key.length() && res.getChild(key.charAt(idx)) != null) {
+        return getPrefixNode(this.getRoot(), key);
+    }
+
+    /*
+     * Same, starting the walk at 'from', whose prefix must be a prefix of key.
+     */
+    private static TrieNode getPrefixNode(TrieNode from, String key) {
+        TrieNode res = from;
+        //while we still have characters to match and the current node has a child
+        //whose whole edge matches the next characters, move to that child
+        while (res.depth < key.length()) {
+            TrieNode child = res.getChild(key.charAt(res.depth));
+            if (child == null || child.matchLabel(key, res.depth) < child.label.length())
+                break;
             //move to the next child
-            res = res.getChild(key.charAt(idx));
-            //move to the next character
-            idx++;
+            res = child;
         }
         //return the node at the longest prefix
-        //which may match the whole word if the condition
-        // "idx<key.length()" is broken in the while loop
         return res;
     }
 
 	/*
-     * Similar to getPrefixNode() but now return the prefix as a String, rather than as a TrieNode.
+     * Return the longest prefix of the key that is also a prefix of some key in the trie.
+     * It may end in the middle of an edge.
 	 */
 
     public String getPrefix(String key) {
-        return getPrefixNode(key).toString();
+        return key.substring(0, prefixLength(getPrefixNode(key), key));
+    }
+
+    /*
+     * Length of the longest prefix of key in the trie, given the deepest node whose
+     * prefix is a prefix of the key.
+     */
+    private static int prefixLength(TrieNode node, String key) {
+        int length = node.depth;
+        if (length < key.length()) {
+            //add the characters matched on the edge the key leaves the trie in
+            TrieNode child = node.getChild(key.charAt(length));
+            if (child != null)
+                length += child.matchLabel(key, length);
+        }
+        return length;
     }
 
 
+    /*
+     *  Return the number of keys with the given prefix, without visiting them: every node
+     *  keeps the number of keys in its subtree.
+     */
+    public int countWithPrefix(String prefix) {
+        TrieNode node = getMatchNode(prefix);
+        return node == null ? 0 : node.keyCount;
+    }
+
+    /*
+     *  Batched contains(): element i of the result tells whether keys.get(i) is in the
+     *  trie.  The keys are visited in sorted order, and each walk starts where the walk
+     *  for the previous key left the common prefix, instead of at the root.
+     */
+    public boolean[] containsAll(List<String> keys) {
+        boolean[] result = new boolean[keys.size()];
+        TrieNode last = root;
+        String previous = "";
+        for (int i : sortedOrder(keys)) {
+            String key = keys.get(i);
+            last = getPrefixNode(resumeNode(last, previous, key), key);
+            previous = key;
+            //the trie always contains the empty string
+            result[i] = key.length() == 0 || (last.depth == key.length() && last.isEndOfKey());
+        }
+        return result;
+    }
+
+    /*
+     *  Batched getPrefix(): element i of the result is getPrefix(keys.get(i)), found the
+     *  same way as in containsAll().
+     */
+    public ArrayList<String> getPrefixes(List<String> keys) {
+        String[] result = new String[keys.size()];
+        TrieNode last = root;
+        String previous = "";
+        for (int i : sortedOrder(keys)) {
+            String key = keys.get(i);
+            last = getPrefixNode(resumeNode(last, previous, key), key);
+            previous = key;
+            result[i] = key.substring(0, prefixLength(last, key));
+        }
+        return new ArrayList<String>(Arrays.asList(result));
+    }
+
+    /*
+     * Positions of the keys in sorted order of the keys.
+     */
+    private static int[] sortedOrder(List<String> keys) {
+        int[] order = new int[keys.size()];
+        if (isSorted(keys)) {
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            return order;
+        }
+        Integer[] boxed = new Integer[keys.size()];
+        for (int i = 0; i < boxed.length; i++)
+            boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        for (int i = 0; i < order.length; i++)
+            order[i] = boxed[i];
+        return order;
+    }
+
     /*
      *  Return true if key is contained in the trie (i.e. it was added by insert), false otherwise.
      *  Hint:  any string is a prefix of itself, so you can use getPrefixNode().
@@ -112,117 +480,739 @@ public class Trie {
      *  Return a list of all keys in the trie that have the given prefix.
      */
     public ArrayList<String> getAllPrefixMatches(String prefix) {
+        return getAllPrefixMatches(prefix, Integer.MAX_VALUE);
+    }
+
+    /*
+     *  Return the first 'limit' keys with the given prefix, in character order.  Only
+     *  the part of the trie holding these keys is visited.
+     */
+    public ArrayList<String> getAllPrefixMatches(String prefix, int limit) {
         //declare the resulting arraylist
         ArrayList<String> stringList = new ArrayList<String>();
-        //get the longest prefix that is in the tree
-        TrieNode curnode = getPrefixNode(prefix);
-        //if the longest prefix equals the prefix, then we can
-        //starting suggesting words by searching for all
-        //words in the subtree of "curnode"
-        if(curnode.depth==prefix.length()) {
-            //scan for words in the tree rooted at curnode
-            ArrayList<TrieNode> temp = scanSubTree(curnode);
-            //store all the resulting words
-            for (int i = 0; i < temp.size(); i++)
-                stringList.add(temp.get(i).toString());
-        }
+        Iterator<String> it = prefixIterator(prefix);
+        while (stringList.size() < limit && it.hasNext())
+            stringList.add(it.next());
         //return result
         return stringList;
     }
+
+    /*
+     *  Iterate over the keys with the given prefix, in character order.  The keys are
+     *  found one at a time as next() is called, so stopping early costs nothing for the
+     *  keys that are never reached.  The trie must not be changed during the iteration.
+     */
+    public Iterator<String> prefixIterator(String prefix) {
+        return new PrefixIterator(prefix, null);
+    }
+
     /*
-        This is a recursive method scan the subtree rooted at cur for any nodes
-        that are endOfKey, which means that it returns all TrieNodes that are
-        the end of a word in the subtree rooted at cur in a recursive fashion
+     *  Same, but only the keys that come after 'startAfter' (in character order): pass
+     *  the last key of one page to get the next page.
      */
-    private ArrayList<TrieNode> scanSubTree(TrieNode cur) {
-        //if we are not at a leaf node
-        ArrayList<TrieNode> result = new ArrayList<TrieNode>();
+    public Iterator<String> prefixIterator(String prefix, String startAfter) {
+        return new PrefixIterator(prefix, startAfter);
+    }
 
-        // if the current node already match, we add it
-        if (cur.isEndOfKey())
-            result.add(cur);
+    public Stream<String> prefixStream(String prefix) {
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(prefixIterator(prefix),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
 
+    /*
+     * Return the highest node whose prefix starts with the given prefix (so that the keys
+     * with that prefix are the ones in its subtree), or null if there is none.
+     */
+    private TrieNode getMatchNode(String prefix) {
+        //get the longest prefix that ends at a node
+        TrieNode curnode = getPrefixNode(prefix);
+        if (curnode.depth == prefix.length())
+            return curnode;
+        //if the prefix ends inside the next edge, every key below that edge matches
+        TrieNode child = curnode.getChild(prefix.charAt(curnode.depth));
+        if (child != null && curnode.depth + child.matchLabel(prefix, curnode.depth) == prefix.length())
+            return child;
+        return null;
+    }
 
-        //search for more matchings in the subtrees
-        for (int i = 0; i < TrieNode.NUMCHILDREN; i++) {
-            //check if the subtree have matchings, if yes collect them
-            if (cur.children[i]!=null){
-                //aggregate the results from all childrens
-                ArrayList<TrieNode> tempRes=scanSubTree(cur.children[i]);
-                //collect every matching in the subtree
-                for(int j=0;j<tempRes.size();j++)
-                    result.add(tempRes.get(j));
+    /*
+     *  Return the k keys with the highest scores among the keys with the given prefix,
+     *  highest first (keys with equal scores come in no particular order).
+     *  <p>
+     *  This is a best-first search: every node knows the highest score in its subtree,
+     *  so the subtrees are opened in order of that bound, and a key is returned as soon
+     *  as no subtree left unopened can hold a higher score.  Only the nodes on the paths
+     *  to the k keys and their siblings are visited, not the whole subtree of the prefix.
+     */
+    public ArrayList<String> topK(String prefix, int k) {
+        ArrayList<String> result = new ArrayList<String>();
+        TrieNode start = getMatchNode(prefix);
+        if (start == null || k <= 0)
+            return result;
+        //subtrees still to open, by their best score, and keys found, by their score
+        PriorityQueue<TrieNode> subtrees = new PriorityQueue<TrieNode>((a, b) -> Long.compare(b.maxScore, a.maxScore));
+        PriorityQueue<TrieNode> keys = new PriorityQueue<TrieNode>((a, b) -> Long.compare(b.score, a.score));
+        subtrees.add(start);
+        while (result.size() < k) {
+            TrieNode bestKey = keys.peek();
+            TrieNode bestSubtree = subtrees.peek();
+            if (bestKey != null && (bestSubtree == null || bestKey.score >= bestSubtree.maxScore)) {
+                result.add(keys.poll().toString());
+                continue;
+            }
+            if (bestSubtree == null)
+                break;
+            subtrees.poll();
+            if (bestSubtree.isEndOfKey())
+                keys.add(bestSubtree);
+            if (bestSubtree.children != null) {
+                for (TrieNode child : bestSubtree.children) {
+                    if (child != null)
+                        subtrees.add(child);
+                }
             }
         }
-        //return all the nodes that have the strings as a prefix
         return result;
     }
+
+    /*
+     *  Return the keys within Levenshtein distance maxDistance of the query (the number of
+     *  characters to insert, delete or replace to turn one into the other), in character
+     *  order.
+     */
+    public ArrayList<String> getFuzzyMatches(String query, int maxDistance) {
+        return getFuzzyMatches(query, maxDistance, "");
+    }
+
+    /*
+     *  Same, but only among the keys with the given prefix.
+     *  <p>
+     *  The trie is walked depth first while filling in the edit-distance table of the
+     *  query against the path: each character on the path adds one row, computed from
+     *  the row of its parent.  A key matches if the last entry of its row is at most
+     *  maxDistance.  Once every entry of a row is above maxDistance, no key below can
+     *  match, so the whole subtree is skipped.
+     */
+    public ArrayList<String> getFuzzyMatches(String query, int maxDistance, String prefix) {
+        ArrayList<String> stringList = new ArrayList<String>();
+        TrieNode start = getMatchNode(prefix);
+        if (start == null || maxDistance < 0)
+            return stringList;
+        int m = query.length();
+        //rows[d] is the row for the first d characters of the current path; a path longer
+        //than m + maxDistance is too far from the query anyway (maxDistance may be as
+        //large as Integer.MAX_VALUE, so the rows are added as deeper paths need them)
+        int maxDepth = (int) Math.min(m + (long) maxDistance, Integer.MAX_VALUE);
+        int[][] rows = new int[Math.min(maxDepth, 16) + 1][];
+        rows[0] = new int[m + 1];
+        for (int j = 0; j <= m; j++)
+            rows[0][j] = j;
+
+        //the rows along the path to the start node
+        String path = start.toString();
+        if (path.length() > maxDepth)
+            return stringList;
+        for (int d = 1; d <= path.length(); d++) {
+            rows = ensureRow(rows, d);
+            if (fillRow(rows, d, path.charAt(d - 1), query) > maxDistance)
+                return stringList;
+        }
+        if (start.isEndOfKey() && rows[start.depth][m] <= maxDistance)
+            stringList.add(path);
+
+        //then the subtree, with the children pushed in reverse to come out in order
+        ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+        pushChildren(stack, start);
+        while (!stack.isEmpty()) {
+            TrieNode node = stack.pop();
+            if (node.depth > maxDepth)
+                continue;
+            int d = node.depth - node.label.length();
+            boolean pruned = false;
+            for (int i = 0; i < node.label.length() && !pruned; i++) {
+                rows = ensureRow(rows, ++d);
+                pruned = fillRow(rows, d, node.label.charAt(i), query) > maxDistance;
+            }
+            if (pruned)
+                continue;
+            if (node.isEndOfKey() && rows[node.depth][m] <= maxDistance)
+                stringList.add(node.toString());
+            pushChildren(stack, node);
+        }
+        return stringList;
+    }
+
+    /*
+     * Return rows, or a longer copy of it, with a row allocated at index d.
+     */
+    private static int[][] ensureRow(int[][] rows, int d) {
+        if (d >= rows.length)
+            rows = Arrays.copyOf(rows, Math.max(d + 1, rows.length * 2));
+        if (rows[d] == null)
+            rows[d] = new int[rows[0].length];
+        return rows;
+    }
+
+    /*
+     * Compute rows[d] from rows[d-1], for a path whose d-th character is c, and return
+     * the smallest entry of the row.
+     */
+    private static int fillRow(int[][] rows, int d, char c, String query) {
+        int[] previous = rows[d - 1];
+        int[] row = rows[d];
+        row[0] = d;
+        int min = d;
+        for (int j = 1; j < row.length; j++) {
+            int replace = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            int cost = Math.min(replace, Math.min(previous[j], row[j - 1]) + 1);
+            row[j] = cost;
+            if (cost < min)
+                min = cost;
+        }
+        return min;
+    }
+
+    private static void pushChildren(ArrayDeque<TrieNode> stack, TrieNode node) {
+        if (node.children == null)
+            return;
+        for (int i = node.children.length - 1; i >= 0; i--) {
+            if (node.children[i] != null)
+                stack.push(node.children[i]);
+        }
+    }
+
+    /*
+     *  Compile the trie into an immutable FrozenTrie holding the same keys, for a
+     *  dictionary that no longer changes.  The trie itself is left as it is.
+     */
+    public FrozenTrie freeze() {
+        //number the nodes in breadth-first order, so that the children of every node
+        //get consecutive numbers, in the order of their characters
+        ArrayList<TrieNode> order = new ArrayList<TrieNode>(nodeCount);
+        order.add(root);
+        int labelLength = 0;
+        for (int i = 0; i < order.size(); i++) {
+            TrieNode cur = order.get(i);
+            labelLength += cur.label.length();
+            if (cur.children != null) {
+                for (TrieNode child : cur.children) {
+                    if (child != null)
+                        order.add(child);
+                }
+            }
+        }
+
+        //copy the shape, the labels and the key flags into flat arrays
+        int n = order.size();
+        int[] childStart = new int[n + 1];
+        int[] labelStart = new int[n + 1];
+        char[] labelChars = new char[labelLength];
+        long[] keyBits = new long[(n + 63) >>> 6];
+        int nextChild = 1;
+        int nextChar = 0;
+        for (int i = 0; i < n; i++) {
+            TrieNode cur = order.get(i);
+            childStart[i] = nextChild;
+            nextChild += cur.numChildren;
+            labelStart[i] = nextChar;
+            cur.label.getChars(0, cur.label.length(), labelChars, nextChar);
+            nextChar += cur.label.length();
+            if (cur.isEndOfKey())
+                keyBits[i >>> 6] |= 1L << i;
+        }
+        childStart[n] = nextChild;
+        labelStart[n] = nextChar;
+        return new FrozenTrie(childStart, labelStart, labelChars, keyBits, size);
+    }
+
+    /*
+     *  Compile the keys into an Aho-Corasick automaton, which finds every occurrence of
+     *  every key in a text in one pass.  Later changes to the trie do not affect it.
+     */
+    public AhoCorasickMatcher compileMatcher() {
+        //one state for the root and one for each character on the edges
+        int states = 1;
+        ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TrieNode cur = stack.pop();
+            states += cur.label.length();
+            pushChildren(stack, cur);
+        }
+
+        //number the states in breadth-first order; state s stands for character
+        //queuePos[s] of the label of queueNode[s] (-1 for the root)
+        TrieNode[] queueNode = new TrieNode[states];
+        int[] queuePos = new int[states];
+        int[] childStart = new int[states + 1];
+        char[] inChar = new char[states];
+        int[] parent = new int[states];
+        long[] keyBits = new long[(states + 63) >>> 6];
+        queueNode[0] = root;
+        queuePos[0] = -1;
+        int tail = 1;
+        for (int s = 0; s < states; s++) {
+            TrieNode node = queueNode[s];
+            int pos = queuePos[s];
+            childStart[s] = tail;
+            if (pos + 1 < node.label.length()) {
+                //inside an edge: the only child is the next character of the label
+                queueNode[tail] = node;
+                queuePos[tail] = pos + 1;
+                inChar[tail] = node.label.charAt(pos + 1);
+                parent[tail++] = s;
+                continue;
+            }
+            if (s > 0 && node.isEndOfKey())
+                keyBits[s >>> 6] |= 1L << s;
+            if (node.children != null) {
+                for (TrieNode child : node.children) {
+                    if (child == null)
+                        continue;
+                    queueNode[tail] = child;
+                    queuePos[tail] = 0;
+                    inChar[tail] = child.label.charAt(0);
+                    parent[tail++] = s;
+                }
+            }
+        }
+        childStart[states] = tail;
+        return new AhoCorasickMatcher(childStart, inChar, parent, keyBits);
+    }
+
+    /*
+     *  Return the number of keys in the trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /*
+     *  Estimated number of bytes taken by the nodes of the trie, their edge labels and
+     *  their child arrays, for a 64-bit JVM with compressed references.
+     */
+    public long getMemoryFootprint() {
+        long bytes = 0;
+        ArrayDeque<TrieNode> stack = new ArrayDeque<TrieNode>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TrieNode cur = stack.pop();
+            bytes += cur.footprint();
+            if (cur.children != null) {
+                for (TrieNode child : cur.children) {
+                    if (child != null)
+                        stack.push(child);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /*
+     *  Estimated memory footprint divided by the number of keys.
+     */
+    public double getBytesPerKey() {
+        return size == 0 ? 0 : (double) getMemoryFootprint() / size;
+    }
+
+    /*
+     *  Depth-first walk over the keys of a subtree, without recursion.  The stack holds
+     *  the nodes on the path from the subtree's root to the current node, each with the
+     *  position in its children array to continue from (-1 if the node itself has not
+     *  been looked at yet).  The current key is built in a single buffer: a node's key
+     *  is the first node.depth characters of it.
+     */
+    private class PrefixIterator implements Iterator<String> {
+        private TrieNode[] nodes = new TrieNode[16];
+        private int[] positions = new int[16];
+        private int top = -1;
+        private final StringBuilder buffer = new StringBuilder();
+        private String nextKey;
+
+        PrefixIterator(String prefix, String startAfter) {
+            TrieNode start = getMatchNode(prefix);
+            if (start != null) {
+                buffer.append(prefix, 0, start.depth - start.label.length()).append(start.label);
+                push(start);
+                if (startAfter != null)
+                    seek(startAfter);
+            }
+            nextKey = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        public String next() {
+            if (nextKey == null)
+                throw new NoSuchElementException();
+            String key = nextKey;
+            nextKey = advance();
+            return key;
+        }
+
+        /*
+         * Continue the walk up to the next node that is the end of a key, and return that key.
+         */
+        private String advance() {
+            while (top >= 0) {
+                TrieNode node = nodes[top];
+                int i = positions[top];
+                if (i < 0) {
+                    //first visit: the node's own key comes before the keys of its children
+                    positions[top] = 0;
+                    if (node.isEndOfKey())
+                        return buffer.substring(0, node.depth);
+                    continue;
+                }
+                TrieNode[] children = node.children;
+                while (children != null && i < children.length && children[i] == null)
+                    i++;
+                if (children == null || i == children.length) {
+                    top--;
+                    continue;
+                }
+                positions[top] = i + 1;
+                buffer.setLength(node.depth);
+                buffer.append(children[i].label);
+                push(children[i]);
+            }
+            return null;
+        }
+
+        /*
+         * Set up the stack so that the walk starts with the first key after 'key': follow
+         * the path of 'key' down, skipping the children that only hold smaller keys.
+         */
+        private void seek(String key) {
+            String path = buffer.toString();
+            if (!key.startsWith(path)) {
+                //either the whole subtree comes after the key, or all of it comes before
+                if (path.compareTo(key) < 0)
+                    top = -1;
+                return;
+            }
+            while (true) {
+                TrieNode node = nodes[top];
+                //the node's own key is not after 'key'
+                positions[top] = 0;
+                if (key.length() == node.depth)
+                    return;
+                char c = key.charAt(node.depth);
+                int i = node.childIndex(c);
+                TrieNode child = node.children != null && i < node.children.length ? node.children[i] : null;
+                if (child == null || child.label.charAt(0) != c) {
+                    //the next children start with larger characters
+                    positions[top] = i;
+                    return;
+                }
+                int common = child.matchLabel(key, node.depth);
+                if (common == child.label.length()) {
+                    //the key goes on below the child
+                    positions[top] = i + 1;
+                    buffer.setLength(node.depth);
+                    buffer.append(child.label);
+                    push(child);
+                    continue;
+                }
+                //the key leaves the trie inside the child's edge: either the child's whole
+                //subtree comes after the key, or all of it comes before
+                if (node.depth + common == key.length() || child.label.charAt(common) > key.charAt(node.depth + common))
+                    positions[top] = i;
+                else
+                    positions[top] = i + 1;
+                return;
+            }
+        }
+
+        private void push(TrieNode node) {
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                positions = Arrays.copyOf(positions, top * 2);
+            }
+            nodes[top] = node;
+            positions[top] = -1;
+        }
+    }
+
     /*
-	 *  A node in a Trie (prefix) tree.  
-	 *  It contains an array of children: one for each possible character.
-	 *  The ith child of a node corresponds to character (char)i
-	 *  which is the UNICODE (and ASCII) value of i. 
-	 *  Similarly the index of character c is (int)c.
-	 *  So children[97] = children[ (int) 'a']  would contain the child for 'a' 
-	 *  since (char)97 == 'a'   and  (int)'a' == 97
+	 *  A node in a Trie (prefix) tree.
+	 *  The edge from its parent is labelled with one or more characters; the node's
+	 *  prefix is its parent's prefix followed by that label.  No two children of a node
+	 *  have labels that start with the same character.
+	 *
+	 *  Small nodes keep their children sorted by first character, in childChars and the
+	 *  same positions of children (so children[numChildren..] is null).  A node with more
+	 *  than MAXSORTED children, all for characters below NUMCHILDREN, is dense instead:
+	 *  childChars is null and children[c] is the child for character c, as in
+	 *  children[97] = children[ (int) 'a'].
 	 */
 
-    private class TrieNode {
-		/*  
-		 *   Highest allowable character index is NUMCHILDREN-1
-		 *   (assuming one-byte ASCII i.e. "extended ASCII")
-		 *   
+    private static class TrieNode {
+		/*
+		 *   Size of the table of a dense node (one-byte "extended ASCII" characters).
+		 *   Characters from NUMCHILDREN up are only found in sorted nodes.
+		 *
 		 *   NUMCHILDREN is constant (static and final)
 		 *   To access it, write "TrieNode.NUMCHILDREN"
 		 */
 
         public static final int NUMCHILDREN = 256;
 
+        // Largest sorted node; past it the binary search no longer pays for the smaller arrays.
+        private static final int MAXSORTED = 48;
+
+        // Estimated sizes, in bytes, of a TrieNode, a String and an array header.
+        private static final int NODEBYTES = 64;
+        private static final int STRINGBYTES = 24;
+        private static final int ARRAYBYTES = 16;
+
         private TrieNode parent;
-        private TrieNode[] children;
-        private int depth;            // 0 for root, 1 for root's children, 2 for their children, etc..
-        private char charInParent;    // Character associated with edge between this node and its parent.
-        // See comment above for relationship between an index in 0 to 255 and a char value.
+        private String label;         // Characters on the edge between this node and its parent ("" for root).
+        private char[] childChars;    // First characters of the children's labels, or null if dense.
+        private TrieNode[] children;  // null until the first child is added.
+        private int numChildren;
+        private int depth;            // Length of the prefix: 0 for root, parent's depth + label length otherwise.
         private boolean endOfKey;   // Set to true if prefix associated with this node is also a key.
+        private long score;           // Score of the key, if endOfKey.
+        private long maxScore = Long.MIN_VALUE;  // Highest score of the keys in this subtree.
+        private int keyCount;         // Number of keys in this subtree.
 
-        // Constructor for new, empty node with NUMCHILDREN children.  All the children are null.
+        // Constructor for the root: an empty node without children.
 
         public TrieNode() {
-            children = new TrieNode[NUMCHILDREN];
+            this("");
+        }
+
+        // Constructor for a node without children, to be added under the edge 'label'.
+
+        public TrieNode(String label) {
+            this.label = label;
             endOfKey = false;
             depth = 0;
-            charInParent = (char) 0;
         }
 
 
         /*
-         *  Add a child to current node.  The child is associated with the character specified by
-         *  the method parameter.  Make sure you set all fields in the child node.
-         *
-         *  To implement this method, see the comment above the inner class TrieNode declaration.
+         *  Add a child to the current node, which has no child for the first character of
+         *  the child's label yet.  Set the child's parent and depth, and return the child.
          */
-        public TrieNode createChild(char c) {
-            //create our new child object
-            TrieNode child = new TrieNode();
-            //if we don't have a child
-            if (this.children[c] == null) {
-                // set the character
-                child.charInParent = c;
-                // set parent
-                child.parent = this;
-                // set depth
-                child.depth = this.depth + 1;
-                // assign new child
-                this.children[c] = child;
+        public TrieNode addChild(TrieNode child) {
+            char c = child.label.charAt(0);
+            child.parent = this;
+            child.depth = this.depth + child.label.length();
+            if (children == null) {
+                childChars = new char[1];
+                children = new TrieNode[1];
+            } else if (childChars == null) {
+                if (c < NUMCHILDREN) {
+                    children[c] = child;
+                    numChildren++;
+                    return child;
+                }
+                //a wide character does not fit the table: go back to sorted arrays
+                makeSorted(numChildren + 1);
+            } else if (numChildren == children.length) {
+                if (numChildren >= MAXSORTED && c < NUMCHILDREN && childChars[numChildren - 1] < NUMCHILDREN) {
+                    makeDense();
+                    children[c] = child;
+                    numChildren++;
+                    return child;
+                }
+                int capacity = numChildren < MAXSORTED ? Math.min(numChildren * 2, MAXSORTED) : numChildren * 2;
+                childChars = Arrays.copyOf(childChars, capacity);
+                children = Arrays.copyOf(children, capacity);
             }
+            //shift the larger characters up to keep the arrays sorted
+            int pos = -Arrays.binarySearch(childChars, 0, numChildren, c) - 1;
+            System.arraycopy(childChars, pos, childChars, pos + 1, numChildren - pos);
+            System.arraycopy(children, pos, children, pos + 1, numChildren - pos);
+            childChars[pos] = c;
+            children[pos] = child;
+            numChildren++;
             return child;
         }
 
-        // Get the child node associated with a given character, i.e. that character is "on"
-        // the edge from this node to the child.  The child could be null.
+        /*
+         *  Position in the children array of the child for character c, or of the first
+         *  child after it if there is none (possibly children.length).
+         */
+        public int childIndex(char c) {
+            if (children == null)
+                return 0;
+            if (childChars == null)
+                return Math.min(c, NUMCHILDREN);
+            int pos = Arrays.binarySearch(childChars, 0, numChildren, c);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+
+        // Get the child node whose label starts with a given character.  The child could be null.
 
         public TrieNode getChild(char c) {
-            return children[c];
+            if (children == null)
+                return null;
+            if (childChars == null)
+                return c < NUMCHILDREN ? children[c] : null;
+            int pos = Arrays.binarySearch(childChars, 0, numChildren, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        /*
+         *  Number of characters of the label that match key, starting at key.charAt(from).
+         */
+        public int matchLabel(String key, int from) {
+            int n = Math.min(label.length(), key.length() - from);
+            int i = 0;
+            while (i < n && label.charAt(i) == key.charAt(from + i))
+                i++;
+            return i;
+        }
+
+        /*
+         *  Cut the edge to this node after its first 'length' characters, with the new
+         *  node 'middle', labelled with these characters, in between (0 < length < label
+         *  length).  Return the new node.
+         */
+        public TrieNode split(int length, TrieNode middle) {
+            middle.parent = parent;
+            middle.depth = depth - label.length() + length;
+            middle.maxScore = maxScore;
+            middle.keyCount = keyCount;
+            parent.replaceChild(this, middle);
+            label = label.substring(length);
+            middle.addChild(this);
+            return middle;
+        }
+
+        /*
+         *  Remove a child of the current node.  The arrays shrink as they empty: a dense
+         *  table goes back to sorted arrays at half of MAXSORTED children, and sorted
+         *  arrays are halved when a quarter full.
+         */
+        public void removeChild(TrieNode child) {
+            char c = child.label.charAt(0);
+            numChildren--;
+            if (childChars == null) {
+                children[c] = null;
+                if (numChildren <= MAXSORTED / 2)
+                    makeSorted(MAXSORTED);
+                return;
+            }
+            int pos = Arrays.binarySearch(childChars, 0, numChildren + 1, c);
+            System.arraycopy(childChars, pos + 1, childChars, pos, numChildren - pos);
+            System.arraycopy(children, pos + 1, children, pos, numChildren - pos);
+            children[numChildren] = null;
+            if (numChildren == 0) {
+                removeAllChildren();
+            } else if (numChildren <= children.length / 4) {
+                childChars = Arrays.copyOf(childChars, children.length / 2);
+                children = Arrays.copyOf(children, children.length / 2);
+            }
+        }
+
+        public void removeAllChildren() {
+            childChars = null;
+            children = null;
+            numChildren = 0;
+        }
+
+        public TrieNode getOnlyChild() {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != null)
+                    return children[i];
+            }
+            return null;
+        }
+
+        /*
+         *  Reset every field, for a node taken out of the trie.
+         */
+        public void clear() {
+            parent = null;
+            label = null;
+            removeAllChildren();
+            depth = 0;
+            endOfKey = false;
+            score = 0;
+            maxScore = Long.MIN_VALUE;
+            keyCount = 0;
+        }
+
+        // Put 'child' where 'old' is; both labels start with the same character.
+
+        private void replaceChild(TrieNode old, TrieNode child) {
+            char c = old.label.charAt(0);
+            if (childChars == null)
+                children[c] = child;
+            else
+                children[Arrays.binarySearch(childChars, 0, numChildren, c)] = child;
+        }
+
+        /*
+         *  Highest score of the keys in this subtree, from the children's maxScore.
+         */
+        public long computeMaxScore() {
+            long max = endOfKey ? score : Long.MIN_VALUE;
+            if (children != null) {
+                for (TrieNode child : children) {
+                    if (child != null && child.maxScore > max)
+                        max = child.maxScore;
+                }
+            }
+            return max;
+        }
+
+        private void makeDense() {
+            TrieNode[] table = new TrieNode[NUMCHILDREN];
+            for (int i = 0; i < numChildren; i++)
+                table[childChars[i]] = children[i];
+            childChars = null;
+            children = table;
+        }
+
+        private void makeSorted(int capacity) {
+            char[] chars = new char[capacity];
+            TrieNode[] sorted = new TrieNode[capacity];
+            int n = 0;
+            for (int c = 0; c < NUMCHILDREN; c++) {
+                if (children[c] != null) {
+                    chars[n] = (char) c;
+                    sorted[n++] = children[c];
+                }
+            }
+            childChars = chars;
+            children = sorted;
+        }
+
+        /*
+         *  Estimated bytes for this node, its label and its arrays (object sizes are
+         *  rounded up to 8 bytes).
+         */
+        private long footprint() {
+            long bytes = NODEBYTES;
+            if (label.length() != 0) {
+                boolean latin1 = true;
+                for (int i = 0; i < label.length(); i++)
+                    latin1 &= label.charAt(i) < NUMCHILDREN;
+                bytes += STRINGBYTES + align(ARRAYBYTES + (long) label.length() * (latin1 ? 1 : 2));
+            }
+            if (childChars != null)
+                bytes += align(ARRAYBYTES + 2L * childChars.length);
+            if (children != null)
+                bytes += align(ARRAYBYTES + 4L * children.length);
+            return bytes;
+        }
+
+        private static long align(long bytes) {
+            return (bytes + 7) & ~7L;
         }
 
         // Test whether the path from the root to this node is a key in the trie.
@@ -238,20 +1228,23 @@ public class Trie {
             this.endOfKey = endOfKey;
         }
 
-		/*  
+		/*
 		 *  Return the prefix (as a String) associated with this node.  This prefix
-         *  is defined by descending from the root to this node.  However, you will
-         *  find it is easier to implement by ascending from the node to the root,
-         *  composing the prefix string from its last character to its first.  
+         *  is defined by descending from the root to this node.  However, it is
+         *  easier to compose it by ascending from the node to the root, copying each
+         *  label to its place: the prefix is exactly depth characters long.
 		 *
 		 *  This overrides the default toString() method.
 		 */
         public String toString() {
-            // we still have more characters on the path from the current node to root
-            if (this.parent != null)
-                return this.parent.toString() + this.charInParent;
-            else // we have reached root, which means no more characters
-                return "";
+            char[] chars = new char[depth];
+            int end = depth;
+            // we still have more labels on the path from the current node to root
+            for (TrieNode node = this; node.parent != null; node = node.parent) {
+                end -= node.label.length();
+                node.label.getChars(0, node.label.length(), chars, end);
+            }
+            return new String(chars);
         }
     }
 